@@ -0,0 +1,129 @@
+package connections;
+
+import java.util.Arrays;
+
+/**
+ * This class finds shortest chains by bidirectional breadth-first search: one search
+ * grows from each end, a whole level at a time, always on the side with the smaller
+ * frontier, until the two meet. For a chain of d hops through members with b friends
+ * each, that explores about 2*b^(d/2) members instead of b^d.
+ *
+ * The queues, parents and distances are int arrays kept from one search to the next. A
+ * member counts as seen by a side in the current search only if its stamp for that side
+ * equals the search's epoch, so starting a search is just incrementing the epoch, with no
+ * clearing of arrays. An instance is not thread safe; Connections keeps one per thread.
+ *
+ */
+final class ChainSearch {
+	
+	// per side (0 grows from p1, 1 from p2), indexed by member number
+	private int[][] stamp = new int[2][0];
+	private int[][] parent = new int[2][0];
+	private int[][] dist = new int[2][0];
+	private int[][] queue = new int[2][0];
+	
+	private int[] head = new int[2], tail = new int[2];
+	
+	private int epoch;
+	
+	// length of the shortest chain found so far, and the member where its sides meet
+	private int best, meet;
+	
+	/**
+	 * Finds a shortest chain in either form of graph; exactly one of g and csr is given.
+	 *
+	 * @return Members of the chain from p1 to p2, or null if there is none
+	 */
+	int[] search(Graph g, CsrGraph csr, int p1, int p2) {
+		int n = g != null ? g.members.length : csr.size();
+		start(n);
+		see(0, p1, p1);
+		see(1, p2, p2);
+		best = Integer.MAX_VALUE;
+		if (p1 == p2) {
+			best = 0;
+			meet = p1;
+		}
+		while (best == Integer.MAX_VALUE && head[0] < tail[0] && head[1] < tail[1]) {
+			// expand the next level of the side with fewer members waiting
+			int side = tail[0] - head[0] <= tail[1] - head[1] ? 0 : 1;
+			int levelEnd = tail[side];
+			while (head[side] < levelEnd) {
+				int vertex = queue[side][head[side]++];
+				if (g != null) {
+					for (Friend f = g.members[vertex].first; f != null; f = f.next) {
+						reach(side, vertex, f.fnum);
+					}
+				} else {
+					for (int e = csr.offsets[vertex]; e < csr.offsets[vertex+1]; e++) {
+						reach(side, vertex, csr.neighbors[e]);
+					}
+				}
+			}
+			// the whole level is expanded before stopping, since a later member of it
+			// may meet the other side at a smaller distance
+		}
+		return best == Integer.MAX_VALUE ? null : chain();
+	}
+	
+	/**
+	 * Makes room for n members, and starts a new epoch.
+	 */
+	private void start(int n) {
+		if (stamp[0].length < n) {
+			for (int side = 0; side < 2; side++) {
+				stamp[side] = new int[n];
+				parent[side] = new int[n];
+				dist[side] = new int[n];
+				queue[side] = new int[n];
+			}
+		}
+		if (epoch == Integer.MAX_VALUE) {
+			Arrays.fill(stamp[0], 0);
+			Arrays.fill(stamp[1], 0);
+			epoch = 0;
+		}
+		epoch++;
+		head[0] = tail[0] = head[1] = tail[1] = 0;
+	}
+	
+	private void see(int side, int vertex, int from) {
+		stamp[side][vertex] = epoch;
+		parent[side][vertex] = from;
+		dist[side][vertex] = from == vertex ? 0 : dist[side][from] + 1;
+		queue[side][tail[side]++] = vertex;
+	}
+	
+	/**
+	 * Follows a friendship from vertex to friend on one side, and notes a meeting if the
+	 * other side has seen friend.
+	 */
+	private void reach(int side, int vertex, int friend) {
+		if (stamp[side][friend] != epoch)
+			see(side, friend, vertex);
+		if (stamp[1-side][friend] == epoch) {
+			int length = dist[side][friend] + dist[1-side][friend];
+			if (length < best) {
+				best = length;
+				meet = friend;
+			}
+		}
+	}
+	
+	/**
+	 * Builds the chain through the meeting member.
+	 */
+	private int[] chain() {
+		int[] chain = new int[best+1];
+		int i = dist[0][meet];
+		for (int v = meet; i >= 0; v = parent[0][v]) {
+			chain[i--] = v;
+		}
+		i = dist[0][meet];
+		for (int v = meet; i < best; ) {
+			v = parent[1][v];
+			chain[++i] = v;
+		}
+		return chain;
+	}
+}
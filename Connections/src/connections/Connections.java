@@ -7,12 +7,24 @@ import java.util.*;
 
 public class Connections {
 
+	/**
+	 * Reusable search state for shortestChain, one per thread.
+	 */
+	private static final ThreadLocal<ChainSearch> chainSearch = new ThreadLocal<ChainSearch>() {
+		protected ChainSearch initialValue() {
+			return new ChainSearch();
+		}
+	};
+	
 	/**
 	 * Finds the shortest chain of people from p1 to p2.
 	 * Chain is returned as a sequence of names starting with p1,
 	 * and ending with p2. Each pair (n1,n2) of consecutive names in
 	 * the returned chain is an edge in the graph.
 	 * 
+	 * The search is a bidirectional breadth-first search (see ChainSearch),
+	 * so if there are several shortest chains, any one of them may be returned.
+	 * 
 	 * @param g Graph for which shortest chain is to be found.
 	 * @param p1 Person with whom the chain originates
 	 * @param p2 Person at whom the chain terminates
@@ -20,49 +32,16 @@ public class Connections {
 	 *         path from p1 to p2
 	 */
 	public static ArrayList<String> shortestChain(Graph g, String p1, String p2) {
-		Queue<Integer> q = new Queue<Integer>();
-		
-		int[] path = new int[g.members.length];
-		Arrays.fill(path, -1);
-		
-		int p1Vertex = g.map.get(p1);
-		int p2Vertex = g.map.get(p2);
-		q.enqueue(p1Vertex);
-		path[p1Vertex] = p1Vertex;
-		
-		while(!q.isEmpty()) {
-			int vertex = q.dequeue();
-			
-			Friend f = g.members[vertex].first;
-			while (f != null) {
-				if (f.fnum == p2Vertex) { // if p2 found
-					path[f.fnum] = vertex;
-					return generatePath(g, path, p1Vertex, p2Vertex);
-				}	
-				if (path[f.fnum] == -1) {
-					q.enqueue(f.fnum);
-					path[f.fnum] = vertex;
-				}
-				f = f.next;
-			}
-		}
-		return null;
-	}
-	
-	private static ArrayList<String> generatePath(Graph g, int[] prevVertices, int start, int end) {
-		int vertex = end;
-		Stack<Integer> pathStack = new Stack<Integer>();
-		ArrayList<String> path = new ArrayList<String>();
-		while (vertex != start) {
-			pathStack.push(vertex);
-			vertex = prevVertices[vertex];
-		}
-		pathStack.push(start);
-		while (!pathStack.isEmpty()) {
-			path.add(g.members[pathStack.pop()].name);
+		int[] chain = chainSearch.get().search(g, null, g.map.get(p1), g.map.get(p2));
+		if (chain == null)
+			return null;
+		ArrayList<String> path = new ArrayList<String>(chain.length);
+		for (int vertex : chain) {
+			path.add(g.members[vertex].name);
 		}
 		return path;
 	}
+	
 	/**
 	 * Finds all cliques of students in a given school.
 	 * 
@@ -199,4 +178,158 @@ public class Connections {
 		
 		return connectorList;
 	}
+
+	
+	/**
+	 * Finds the shortest chain of people from p1 to p2 in a CSR graph, as
+	 * shortestChain(Graph, String, String) does.
+	 * 
+	 * @param g Graph for which shortest chain is to be found.
+	 * @param p1 Person with whom the chain originates
+	 * @param p2 Person at whom the chain terminates
+	 * @return The shortest chain from p1 to p2. Null if there is no
+	 *         path from p1 to p2
+	 */
+	public static ArrayList<String> shortestChain(CsrGraph g, String p1, String p2) {
+		int[] chain = chainSearch.get().search(null, g, g.map.get(p1), g.map.get(p2));
+		if (chain == null)
+			return null;
+		ArrayList<String> path = new ArrayList<String>(chain.length);
+		for (int vertex : chain) {
+			path.add(g.names[vertex]);
+		}
+		return path;
+	}
+	
+	/**
+	 * Finds all cliques of students in a given school in a CSR graph, as
+	 * cliques(Graph, String) does. Members are marked when they are queued rather
+	 * than when they are dequeued, which visits them in the same order, but queues
+	 * each one at most once.
+	 * 
+	 * @param g Graph for which cliques are to be found.
+	 * @param school Name of school
+	 * @return Array list of clique array lists. Null if there is no student in the
+	 *         given school
+	 */
+	public static ArrayList<ArrayList<String>> cliques(CsrGraph g, String school) {
+		ArrayList<ArrayList<String>> cliqueList = new ArrayList<ArrayList<String>>();
+		boolean[] queued = new boolean[g.size()];
+		int[] queue = new int[g.size()];
+		
+		for (int i = 0; i < g.size(); i++) {
+			if (queued[i])
+				continue;
+			
+			ArrayList<String> newClique = new ArrayList<String>();
+			int head = 0, tail = 0;
+			queue[tail++] = i;
+			queued[i] = true;
+			while (head < tail) {
+				int vertex = queue[head++];
+				if (g.studentAt(vertex, school)) {
+					newClique.add(g.names[vertex]);
+				}
+				for (int e = g.offsets[vertex]; e < g.offsets[vertex+1]; e++) {
+					int friend = g.neighbors[e];
+					if (!queued[friend] && g.studentAt(friend, school)) {
+						queue[tail++] = friend;
+						queued[friend] = true;
+					}
+				}
+			}
+			if (newClique.size() != 0)
+				cliqueList.add(newClique);
+		}
+		if (cliqueList.size() == 0)
+			return null;
+		
+		return cliqueList;
+	}
+	
+	/**
+	 * Finds and returns all connectors in a CSR graph, as connectors(Graph) does.
+	 * The stack is an int array, and each member keeps the position in its friends
+	 * that its scan for an unvisited friend has reached, so the friends are scanned
+	 * once in all rather than from the start each time the member is on top.
+	 * 
+	 * @param g Graph for which connectors needs to be found.
+	 * @return Names of all connectors. Null if there are no connectors.
+	 */
+	public static ArrayList<String> connectors(CsrGraph g) {
+		int numMembers = g.size();
+		if (numMembers <= 2)
+			return null;
+		
+		ArrayList<String> connectorList = new ArrayList<String>();
+		boolean[] isConnector = new boolean[numMembers];
+		boolean[] visited = new boolean[numMembers];
+		int[] dfsNumList = new int[numMembers];
+		int[] backNumList = new int[numMembers];
+		int[] scan = new int[numMembers];
+		int[] vStack = new int[numMembers];
+		int top = 0;
+		int dfsNum = 0;
+		int backNum = 0;
+		
+		// get number of root neighbors
+		int numRootNeighbors = g.degree(0);
+		
+		for (int i = 0; i < numMembers; i++) {
+			if (visited[i])
+				continue;
+			
+			dfsNumList[i] = dfsNum;
+			backNumList[i] = backNum;
+			vStack[top++] = i;
+			
+			while (top > 0) {
+				int vertex = vStack[top-1];
+				if (!visited[vertex]) {
+					dfsNum++;
+					backNum++;
+					dfsNumList[vertex] = dfsNum;
+					backNumList[vertex] = backNum;
+					scan[vertex] = g.offsets[vertex];
+				}
+				visited[vertex] = true;
+				
+				// get neighbors
+				boolean noValidNeighbors = true;
+				for (; scan[vertex] < g.offsets[vertex+1]; scan[vertex]++) {
+					int neighbor = g.neighbors[scan[vertex]];
+					if (!visited[neighbor]) {
+						vStack[top++] = neighbor;
+						noValidNeighbors = false;
+						break;
+					} else {
+						backNumList[vertex] = Math.min(backNumList[vertex], dfsNumList[neighbor]);
+					}
+				}
+				if (noValidNeighbors) {
+					top--;
+					if (top == 0)
+						break;
+					int prevVertex = vStack[top-1];
+					
+					// case where root is not a connector
+					if (prevVertex == 0 && numRootNeighbors == 1 && top == 1)
+						break;
+					
+					if (dfsNumList[prevVertex] > backNumList[vertex])
+						backNumList[prevVertex] = Math.min(backNumList[prevVertex], backNumList[vertex]);
+					
+					else if (dfsNumList[prevVertex] <= dfsNumList[vertex])
+						if (!isConnector[prevVertex]) {
+							isConnector[prevVertex] = true;
+							connectorList.add(g.names[prevVertex]);
+						}
+				}
+			}
+		}
+		if (connectorList.size() == 0)
+			return null;
+		
+		return connectorList;
+	}
 }
\ No newline at end of file
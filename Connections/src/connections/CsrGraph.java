@@ -0,0 +1,128 @@
+package connections;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Scanner;
+import java.util.StringTokenizer;
+
+/**
+ * This class holds the same friendship graph as Graph, in compressed sparse row form: the
+ * friends of member v are neighbors[offsets[v]] to neighbors[offsets[v+1]-1]. All the
+ * adjacency is in two int arrays, instead of one Friend object per edge endpoint, so a
+ * traversal reads consecutive memory rather than following pointers across the heap.
+ *
+ * Each member's friends are in the same order as in Graph's linked lists, that is, the
+ * reverse of the order in which their friendships appear in the input, so the methods of
+ * Connections give the same results on both forms.
+ *
+ */
+public class CsrGraph {
+	
+	// member info, by member number
+	String[] names;
+	boolean[] student;
+	String[] school;
+	
+	// hash map to store the (name,num) association
+	HashMap<String,Integer> map;
+	
+	// friends of member v are neighbors[offsets[v]..offsets[v+1]-1]
+	int[] offsets;
+	int[] neighbors;
+	
+	// initialize graph from file, in the format read by Graph
+	public CsrGraph(Scanner sc) {
+		// first line is number of people
+		int n = Integer.parseInt(sc.nextLine());
+		init(n);
+		// next n lines are people's info
+		for (int i=0; i < n; i++) {
+			String info = sc.nextLine();
+			StringTokenizer st = new StringTokenizer(info,"|");
+			names[i] = st.nextToken();
+			String yn = st.nextToken(); // student or not
+			if (yn.toLowerCase().charAt(0) == 'y') {
+				student[i] = true;
+				school[i] = st.nextToken();
+			}
+			map.put(names[i],i);
+		}
+		// rest are friendships, kept as pairs until all are read
+		int[] ends = new int[64];
+		int numEdges = 0;
+		while (sc.hasNextLine()) {
+			String line = sc.nextLine();
+			StringTokenizer st = new StringTokenizer(line,"|");
+			if (2*numEdges + 2 > ends.length)
+				ends = Arrays.copyOf(ends, ends.length*2);
+			ends[2*numEdges] = map.get(st.nextToken());
+			ends[2*numEdges+1] = map.get(st.nextToken());
+			numEdges++;
+		}
+		
+		// count the friends of each member, and place each friend at the end of the
+		// member's free slots, so that the last friendship read comes first
+		offsets = new int[n+1];
+		for (int k = 0; k < 2*numEdges; k++) {
+			offsets[ends[k]+1]++;
+		}
+		for (int v = 0; v < n; v++) {
+			offsets[v+1] += offsets[v];
+		}
+		neighbors = new int[2*numEdges];
+		int[] free = Arrays.copyOfRange(offsets, 1, n+1);
+		for (int k = 0; k < numEdges; k++) {
+			int i = ends[2*k], j = ends[2*k+1];
+			neighbors[--free[i]] = j;
+			neighbors[--free[j]] = i;
+		}
+	}
+	
+	// initialize graph from a linked list graph
+	public CsrGraph(Graph g) {
+		int n = g.members.length;
+		init(n);
+		offsets = new int[n+1];
+		for (int v = 0; v < n; v++) {
+			Person person = g.members[v];
+			names[v] = person.name;
+			student[v] = person.student;
+			school[v] = person.school;
+			map.put(person.name,v);
+			int degree = 0;
+			for (Friend f = person.first; f != null; f = f.next) {
+				degree++;
+			}
+			offsets[v+1] = offsets[v] + degree;
+		}
+		neighbors = new int[offsets[n]];
+		for (int v = 0; v < n; v++) {
+			int e = offsets[v];
+			for (Friend f = g.members[v].first; f != null; f = f.next) {
+				neighbors[e++] = f.fnum;
+			}
+		}
+	}
+	
+	private void init(int n) {
+		names = new String[n];
+		student = new boolean[n];
+		school = new String[n];
+		map = new HashMap<String,Integer>(n*2);
+	}
+	
+	// number of members
+	public int size() {
+		return names.length;
+	}
+	
+	// number of friends of member v
+	int degree(int v) {
+		return offsets[v+1] - offsets[v];
+	}
+	
+	// tells if member v is a student at the given school
+	boolean studentAt(int v, String school) {
+		return student[v] && this.school[v].equals(school);
+	}
+}
@@ -0,0 +1,554 @@
+package prefixtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * This class implements a compressed trie laid out in flat arrays, as a compact alternative
+ * to the TrieNode graph built by PrefixTree. Nodes are numbered in breadth-first order, so
+ * the children of a node are consecutive, sorted by their first character, and found by
+ * binary search - there are no sibling chains and no per-node objects to follow.
+ *
+ * The words are copied, sorted, into one char array, and the substring held at a node is
+ * an (offset, length) pair of ints into it, so there are neither Indexes objects nor word
+ * Strings on the heap, and the caller's array of words is not kept. All the words below a
+ * node form a range of the sorted words, and a completion list is read directly from it.
+ *
+ * Unlike PrefixTree, a word may be a prefix of another word: it then ends at an inner node.
+ *
+ * Words may carry weights (e.g. frequency or popularity). Each node caches the largest
+ * weight below it, so topK finds the heaviest completions best-first, without visiting
+ * the rest of the subtree.
+ *
+ * fuzzyCompletions tolerates typos in the prefix, by following the trie as far as the
+ * allowed edit distance can reach.
+ *
+ */
+public class CompactTrie {
+	
+	/**
+	 * Characters of the words in the trie, sorted and without duplicates, one after the other.
+	 */
+	final char[] chars;
+	
+	/**
+	 * Word i is chars[wordStart[i]] to chars[wordStart[i+1]-1].
+	 */
+	final int[] wordStart;
+	
+	/**
+	 * Number of nodes, node 0 being the root.
+	 */
+	final int numNodes;
+	
+	/**
+	 * Children of node n are the nodes childStart[n] to childStart[n+1]-1.
+	 */
+	final int[] childStart;
+	
+	/**
+	 * First character of the substring held at each node.
+	 */
+	final char[] firstChar;
+	
+	/**
+	 * Offset of each node's substring in chars.
+	 */
+	final int[] labelOffset;
+	
+	/**
+	 * Start index of each node's substring in its words, that is, the length of the prefix
+	 * held by the node's ancestors.
+	 */
+	final int[] labelStart;
+	
+	/**
+	 * Length of each node's substring.
+	 */
+	final int[] labelLength;
+	
+	/**
+	 * The words below node n (including one that ends at n) are words wordsFrom[n] to
+	 * wordsTo[n]-1.
+	 */
+	final int[] wordsFrom, wordsTo;
+	
+	/**
+	 * Weight of each word.
+	 */
+	final long[] weights;
+	
+	/**
+	 * Largest weight of the words below each node.
+	 */
+	final long[] maxWeight;
+	
+	/**
+	 * Builds a trie of all words in the input array, all with weight 0. The array is not modified.
+	 *
+	 * @param allWords Input array of words (lowercase) to be inserted
+	 */
+	public CompactTrie(String[] allWords) {
+		this(allWords, null);
+	}
+	
+	/**
+	 * Builds a trie of all words in the input array, with their weights. Neither array is
+	 * modified. A word that appears more than once keeps its largest weight.
+	 *
+	 * @param allWords Input array of words (lowercase) to be inserted
+	 * @param allWeights Weight of each word, or null for all 0
+	 */
+	public CompactTrie(final String[] allWords, long[] allWeights) {
+		if (allWeights != null && allWeights.length != allWords.length) {
+			throw new IllegalArgumentException("need one weight per word");
+		}
+		Integer[] order = new Integer[allWords.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				return allWords[i1].compareTo(allWords[i2]);
+			}
+		});
+		String[] sorted = new String[allWords.length];
+		long[] sortedWeights = new long[allWords.length];
+		int n = 0;
+		for (int i = 0; i < order.length; i++) {
+			String word = allWords[order[i]];
+			long weight = allWeights == null ? 0 : allWeights[order[i]];
+			if (n > 0 && word.equals(sorted[n-1])) {
+				sortedWeights[n-1] = Math.max(sortedWeights[n-1], weight);
+			} else {
+				sorted[n] = word;
+				sortedWeights[n++] = weight;
+			}
+		}
+		weights = Arrays.copyOf(sortedWeights, n);
+		long total = 0;
+		for (int i = 0; i < n; i++) {
+			total += sorted[i].length();
+		}
+		if (total > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("words too long in total: " + total + " characters");
+		}
+		chars = new char[(int) total];
+		wordStart = new int[n+1];
+		for (int i = 0; i < n; i++) {
+			sorted[i].getChars(0, sorted[i].length(), chars, wordStart[i]);
+			wordStart[i+1] = wordStart[i] + sorted[i].length();
+		}
+		
+		// each node other than the root adds a word or a branch, so there are at most 2n+1
+		int max = 2*n + 1;
+		int[] childStart = new int[max+1];
+		char[] firstChar = new char[max];
+		int[] labelOffset = new int[max], labelStart = new int[max], labelLength = new int[max];
+		int[] wordsFrom = new int[max], wordsTo = new int[max];
+		wordsTo[0] = n;
+		int next = 1;
+		// nodes are created in breadth-first order, so processing them in number order
+		// places each node's children right after those of the node before it
+		for (int node = 0; node < next; node++) {
+			childStart[node] = next;
+			int depth = labelStart[node] + labelLength[node];
+			int lo = wordsFrom[node], hi = wordsTo[node];
+			if (lo < hi && length(lo) == depth)
+				lo++; // word ending at this node
+			while (lo < hi) {
+				char c = charAt(lo, depth);
+				int end = lo+1;
+				while (end < hi && charAt(end, depth) == c) {
+					end++;
+				}
+				// the words of a sorted range share the prefix of its first and last words
+				int common = depth+1;
+				while (common < length(lo) && common < length(end-1)
+						&& charAt(lo, common) == charAt(end-1, common)) {
+					common++;
+				}
+				firstChar[next] = c;
+				labelOffset[next] = wordStart[lo] + depth;
+				labelStart[next] = depth;
+				labelLength[next] = common - depth;
+				wordsFrom[next] = lo;
+				wordsTo[next] = end;
+				next++;
+				lo = end;
+			}
+		}
+		childStart[next] = next;
+		
+		numNodes = next;
+		this.childStart = Arrays.copyOf(childStart, next+1);
+		this.firstChar = Arrays.copyOf(firstChar, next);
+		this.labelOffset = Arrays.copyOf(labelOffset, next);
+		this.labelStart = Arrays.copyOf(labelStart, next);
+		this.labelLength = Arrays.copyOf(labelLength, next);
+		this.wordsFrom = Arrays.copyOf(wordsFrom, next);
+		this.wordsTo = Arrays.copyOf(wordsTo, next);
+		
+		// children are numbered after their parents, so one backward pass fills in the maxima
+		maxWeight = new long[next];
+		for (int node = next-1; node >= 0; node--) {
+			long heaviest = isWord(node) ? weights[wordsFrom[node]] : Long.MIN_VALUE;
+			for (int child = this.childStart[node]; child < this.childStart[node+1]; child++) {
+				heaviest = Math.max(heaviest, maxWeight[child]);
+			}
+			maxWeight[node] = heaviest;
+		}
+	}
+	
+	private int length(int word) {
+		return wordStart[word+1] - wordStart[word];
+	}
+	
+	private char charAt(int word, int i) {
+		return chars[wordStart[word] + i];
+	}
+	
+	/**
+	 * Returns the word at an index.
+	 *
+	 * @param word Index of the word
+	 * @return Word
+	 */
+	String word(int word) {
+		return new String(chars, wordStart[word], length(word));
+	}
+	
+	/**
+	 * Finds the child of a node whose substring starts with the given character.
+	 *
+	 * @param node Parent node
+	 * @param c First character of the child's substring
+	 * @return Child node, or -1 if there is none
+	 */
+	int child(int node, char c) {
+		int left = childStart[node], right = childStart[node+1]-1;
+		while (left <= right) {
+			int mid = (left + right) >>> 1;
+			char midChar = firstChar[mid];
+			if (midChar < c)
+				left = mid+1;
+			else if (midChar > c)
+				right = mid-1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Finds the node at which a prefix ends, that is, the highest node all of whose words
+	 * start with the prefix. The prefix may end inside the node's substring.
+	 *
+	 * @param prefix Prefix
+	 * @return Node, or -1 if no word starts with the prefix
+	 */
+	int locate(String prefix) {
+		int node = 0;
+		int d = 0;
+		while (d < prefix.length()) {
+			int child = child(node, prefix.charAt(d));
+			if (child < 0)
+				return -1;
+			int offset = labelOffset[child] - labelStart[child];
+			int end = Math.min(labelStart[child] + labelLength[child], prefix.length());
+			for (d++; d < end; d++) {
+				if (chars[offset + d] != prefix.charAt(d))
+					return -1;
+			}
+			node = child;
+		}
+		return node;
+	}
+	
+	/**
+	 * Returns the number of characters from the root to the end of a node's substring.
+	 *
+	 * @param node Node
+	 * @return Length of the prefix held by the node
+	 */
+	int depth(int node) {
+		return labelStart[node] + labelLength[node];
+	}
+	
+	/**
+	 * Tells if a word ends at a node.
+	 *
+	 * @param node Node
+	 * @return True if the first word below the node ends there
+	 */
+	boolean isWord(int node) {
+		return wordsFrom[node] < wordsTo[node] && length(wordsFrom[node]) == depth(node);
+	}
+	
+	/**
+	 * Returns the "completion list" for a prefix, i.e. all the words in the trie that start
+	 * with the prefix, in sorted order. The prefix may be an entire word.
+	 *
+	 * @param prefix Prefix to be completed with words in trie
+	 * @return List of all words that start with the prefix, or null if there are none
+	 */
+	public ArrayList<String> completionList(String prefix) {
+		int node = locate(prefix);
+		if (node < 0 || wordsFrom[node] == wordsTo[node])
+			return null;
+		ArrayList<String> list = new ArrayList<String>(wordsTo[node] - wordsFrom[node]);
+		for (int i = wordsFrom[node]; i < wordsTo[node]; i++) {
+			list.add(word(i));
+		}
+		return list;
+	}
+	
+	/**
+	 * Returns the k heaviest words that start with a prefix, heaviest first, and in sorted
+	 * order among equal weights. Nodes are expanded best-first from a priority queue keyed
+	 * on their cached maximum weight, so only the paths to the results and their siblings
+	 * are visited.
+	 *
+	 * @param prefix Prefix to be completed with words in trie
+	 * @param k Maximum number of words to return
+	 * @return Up to k words that start with the prefix, empty if there are none
+	 */
+	public ArrayList<String> topK(String prefix, int k) {
+		ArrayList<String> result = new ArrayList<String>(Math.min(k, 64));
+		int start = locate(prefix);
+		if (start < 0 || k <= 0)
+			return result;
+		PriorityQueue<Integer> queue = newQueue();
+		queue.add(start);
+		expand(queue, k, result);
+		return result;
+	}
+	
+	/**
+	 * Creates the priority queue of topK. Its entries are nodes (n >= 0), or words that end
+	 * at a node (-1-n); both are keyed on weight, then on the index of their first word,
+	 * which is never greater for a node than for any word below it.
+	 */
+	private PriorityQueue<Integer> newQueue() {
+		return new PriorityQueue<Integer>(16, new Comparator<Integer>() {
+			public int compare(Integer e1, Integer e2) {
+				long w1 = e1 >= 0 ? maxWeight[e1] : weights[wordsFrom[-1-e1]];
+				long w2 = e2 >= 0 ? maxWeight[e2] : weights[wordsFrom[-1-e2]];
+				if (w1 != w2)
+					return w1 > w2 ? -1 : 1;
+				int i1 = wordsFrom[e1 >= 0 ? e1 : -1-e1], i2 = wordsFrom[e2 >= 0 ? e2 : -1-e2];
+				if (i1 != i2)
+					return i1 < i2 ? -1 : 1;
+				return e1 < 0 ? -1 : (e2 < 0 ? 1 : 0); // a word before the node it ends at
+			}
+		});
+	}
+	
+	/**
+	 * Adds the words of the queue's entries to the result best-first, until the result holds
+	 * k words or the entries are exhausted.
+	 */
+	private void expand(PriorityQueue<Integer> queue, int k, ArrayList<String> result) {
+		while (!queue.isEmpty() && result.size() < k) {
+			int entry = queue.poll();
+			if (entry < 0) {
+				result.add(word(wordsFrom[-1-entry]));
+				continue;
+			}
+			if (isWord(entry))
+				queue.add(-1-entry);
+			for (int child = childStart[entry]; child < childStart[entry+1]; child++) {
+				queue.add(child);
+			}
+		}
+	}
+	
+	/**
+	 * Returns up to k words that start with a prefix within maxEdits edits (insertions,
+	 * deletions or substitutions) of the given one, ranked by that distance, then heaviest
+	 * first, then in sorted order. A word's distance is the smallest edit distance between
+	 * the query and any prefix of the word, so "helo" completes to "hello" and "helpful"
+	 * at distance 1, and to "helot" at distance 0.
+	 *
+	 * The trie is walked depth-first carrying one row of the Levenshtein table per path,
+	 * extended by one character at a time. A subtree is cut off as soon as the smallest
+	 * entry of the row cannot beat the best distance already found on the path (or exceeds
+	 * maxEdits), since the entries never decrease further down, and once k words are found
+	 * within some distance, nothing further away is looked for. The cut-off subtrees are
+	 * then ranked per distance best-first, as by topK.
+	 *
+	 * @param query Prefix to be completed, possibly misspelled
+	 * @param maxEdits Largest edit distance allowed
+	 * @param k Maximum number of words to return
+	 * @return Up to k words, empty if there are none
+	 */
+	public ArrayList<String> fuzzyCompletions(String query, int maxEdits, int k) {
+		ArrayList<String> result = new ArrayList<String>(Math.min(k, 64));
+		if (k <= 0 || maxEdits < 0 || size() == 0)
+			return result;
+		FuzzySearch search = new FuzzySearch(query, maxEdits, k);
+		if (query.isEmpty())
+			search.add(0, 0); // every word starts with the empty query
+		else
+			fuzzy(0, query.length(), search);
+		for (int d = 0; d <= search.maxEdits && result.size() < k; d++) {
+			if (search.found[d].isEmpty())
+				continue;
+			PriorityQueue<Integer> queue = newQueue();
+			queue.addAll(search.found[d]);
+			expand(queue, k, result);
+		}
+		return result;
+	}
+	
+	/**
+	 * State of a fuzzyCompletions query.
+	 */
+	private final class FuzzySearch {
+		
+		final String query;
+		
+		/**
+		 * Largest distance still worth finding. It is lowered once k words are found within
+		 * a smaller distance, since words further away cannot make the result.
+		 */
+		int maxEdits;
+		
+		final int k;
+		
+		/**
+		 * Row i of the Levenshtein table is that of the first i characters of the path. A path
+		 * is cut off before it is maxEdits longer than the query, as every entry of its row is
+		 * then too large.
+		 */
+		final int[][] rows;
+		
+		/**
+		 * topK queue entries of the words found at each distance, and the number of words.
+		 */
+		final ArrayList<Integer>[] found;
+		
+		final int[] count;
+		
+		@SuppressWarnings({"unchecked","rawtypes"})
+		FuzzySearch(String query, int maxEdits, int k) {
+			this.query = query;
+			this.maxEdits = maxEdits;
+			this.k = k;
+			rows = new int[query.length() + maxEdits + 2][query.length()+1];
+			for (int j = 0; j <= query.length(); j++) {
+				rows[0][j] = j;
+			}
+			found = new ArrayList[maxEdits+1];
+			count = new int[maxEdits+1];
+			for (int d = 0; d <= maxEdits; d++) {
+				found[d] = new ArrayList<Integer>();
+			}
+		}
+		
+		/**
+		 * Files a queue entry under its distance, and lowers maxEdits if that makes k words.
+		 */
+		void add(int entry, int distance) {
+			found[distance].add(entry);
+			count[distance] += entry >= 0 ? wordsTo[entry] - wordsFrom[entry] : 1;
+			int total = 0;
+			for (int d = 0; d < maxEdits; d++) {
+				total += count[d];
+				if (total >= k) {
+					maxEdits = d;
+					break;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Extends the rows of the path above a node with the node's substring, and files the
+	 * node's words under their distance. best is the smallest distance between the query
+	 * and a prefix of the path so far.
+	 */
+	private void fuzzy(int node, int best, FuzzySearch search) {
+		String query = search.query;
+		int m = query.length();
+		int offset = labelOffset[node] - labelStart[node];
+		for (int i = labelStart[node]; i < depth(node); i++) {
+			int[] above = search.rows[i], row = search.rows[i+1];
+			char c = chars[offset + i];
+			row[0] = above[0] + 1;
+			int min = row[0];
+			for (int j = 1; j <= m; j++) {
+				int cost = above[j-1] + (query.charAt(j-1) == c ? 0 : 1);
+				row[j] = Math.min(cost, Math.min(above[j], row[j-1]) + 1);
+				min = Math.min(min, row[j]);
+			}
+			best = Math.min(best, row[m]);
+			if (min >= Math.min(best, search.maxEdits+1)) {
+				// no extension of the path comes closer than best
+				if (best <= search.maxEdits)
+					search.add(node, best);
+				return;
+			}
+		}
+		if (isWord(node) && best <= search.maxEdits)
+			search.add(-1-node, best);
+		for (int child = childStart[node]; child < childStart[node+1]; child++) {
+			fuzzy(child, best, search);
+		}
+	}
+	
+	/**
+	 * Returns the weight of a word.
+	 *
+	 * @param word Word
+	 * @return Weight, or -1 if the word is not in the trie
+	 */
+	public long weight(String word) {
+		int node = locate(word);
+		if (node < 0 || depth(node) != word.length() || !isWord(node))
+			return -1;
+		return weights[wordsFrom[node]];
+	}
+	
+	/**
+	 * Returns the number of words that start with a prefix, without listing them.
+	 *
+	 * @param prefix Prefix
+	 * @return Number of completions
+	 */
+	public int completionCount(String prefix) {
+		int node = locate(prefix);
+		return node < 0 ? 0 : wordsTo[node] - wordsFrom[node];
+	}
+	
+	/**
+	 * Tells if a word is in the trie.
+	 *
+	 * @param word Word
+	 * @return True if the word was inserted
+	 */
+	public boolean contains(String word) {
+		int node = locate(word);
+		return node >= 0 && depth(node) == word.length() && isWord(node);
+	}
+	
+	/**
+	 * Returns the number of words in the trie.
+	 *
+	 * @return Word count
+	 */
+	public int size() {
+		return wordStart.length-1;
+	}
+	
+	/**
+	 * Returns the number of nodes in the trie, including the root.
+	 *
+	 * @return Node count
+	 */
+	public int nodeCount() {
+		return numNodes;
+	}
+}
@@ -0,0 +1,17 @@
+package prefixtree;
+
+/**
+ * This interface receives the leaf nodes of a completion list one at a time, as
+ * PrefixTree.completions finds them, so that no list has to be built.
+ *
+ */
+public interface CompletionVisitor {
+	
+	/**
+	 * Receives a leaf node that holds a word starting with the prefix.
+	 * 
+	 * @param leaf Leaf node, holding the word allWords[leaf.substr.wordIndex]
+	 * @return True to go on to the next leaf, false to stop the traversal
+	 */
+	boolean visit(TrieNode leaf);
+}
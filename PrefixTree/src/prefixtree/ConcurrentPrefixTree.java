@@ -0,0 +1,334 @@
+package prefixtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class implements a compressed trie that any number of threads can search while
+ * others insert and delete words. Nodes are immutable: a writer copies the nodes on the
+ * path to the change (path copying), and publishes the new root with a compare-and-set,
+ * retrying if another writer got there first. A search reads the root once and works on
+ * that snapshot, so it never blocks, never retries, and always sees a consistent trie.
+ *
+ * As in DynamicPrefixTree, words are stored with a terminating '\0', so every word ends at
+ * a leaf of its own. Instead of an index into a shared array of words, each node holds a
+ * reference to the word it takes its substring from, so snapshots share no mutable state.
+ *
+ */
+public class ConcurrentPrefixTree {
+	
+	/**
+	 * An immutable trie node, holding the substring word[start..end].
+	 */
+	static final class Node {
+		
+		/**
+		 * Terminated word that holds the substring, null for the root.
+		 */
+		final String word;
+		
+		/**
+		 * Start and end index of the substring in word.
+		 */
+		final int start, end;
+		
+		/**
+		 * Children, in order of their first character; empty for a leaf.
+		 */
+		final Node[] children;
+		
+		/**
+		 * Number of words below this node.
+		 */
+		final int count;
+		
+		Node(String word, int start, int end, Node[] children, int count) {
+			this.word = word;
+			this.start = start;
+			this.end = end;
+			this.children = children;
+			this.count = count;
+		}
+		
+		char firstChar() {
+			return word.charAt(start);
+		}
+		
+		boolean isLeaf() {
+			return children.length == 0;
+		}
+	}
+	
+	private static final Node[] NO_CHILDREN = new Node[0];
+	
+	/**
+	 * Current root, replaced by every change.
+	 */
+	private final AtomicReference<Node> root;
+	
+	/**
+	 * Initializes an empty trie.
+	 */
+	public ConcurrentPrefixTree() {
+		root = new AtomicReference<Node>(new Node(null, 0, -1, NO_CHILDREN, 0));
+	}
+	
+	/**
+	 * Initializes a trie with all words in the input array. The array is not modified.
+	 *
+	 * @param allWords Input array of words (lowercase) to be inserted
+	 */
+	public ConcurrentPrefixTree(String[] allWords) {
+		String[] terminated = new String[allWords.length];
+		for (int i = 0; i < allWords.length; i++) {
+			terminated[i] = allWords[i] + DynamicPrefixTree.TERMINATOR;
+		}
+		Arrays.sort(terminated);
+		int n = 0;
+		for (int i = 0; i < terminated.length; i++) {
+			if (n == 0 || !terminated[i].equals(terminated[n-1]))
+				terminated[n++] = terminated[i];
+		}
+		Node[] children = buildChildren(terminated, 0, n, 0);
+		root = new AtomicReference<Node>(new Node(null, 0, -1, children, n));
+	}
+	
+	/**
+	 * Builds the children of a node whose words are words[lo..hi-1], sorted, sharing
+	 * their first depth characters.
+	 */
+	private static Node[] buildChildren(String[] words, int lo, int hi, int depth) {
+		ArrayList<Node> children = new ArrayList<Node>();
+		while (lo < hi) {
+			char c = words[lo].charAt(depth);
+			int end = lo+1;
+			while (end < hi && words[end].charAt(depth) == c) {
+				end++;
+			}
+			if (end - lo == 1) {
+				children.add(new Node(words[lo], depth, words[lo].length()-1, NO_CHILDREN, 1));
+			} else {
+				String first = words[lo], last = words[end-1];
+				int common = depth+1;
+				while (first.charAt(common) == last.charAt(common)) { // terminators differ first
+					common++;
+				}
+				children.add(new Node(first, depth, common-1, buildChildren(words, lo, end, common), end - lo));
+			}
+			lo = end;
+		}
+		return children.toArray(new Node[children.size()]);
+	}
+	
+	/**
+	 * Finds the child with the given first character by binary search.
+	 *
+	 * @return Index of the child, or -(insertion point)-1 if there is none
+	 */
+	private static int find(Node[] children, char c) {
+		int left = 0, right = children.length-1;
+		while (left <= right) {
+			int mid = (left + right) >>> 1;
+			char midChar = children[mid].firstChar();
+			if (midChar < c)
+				left = mid+1;
+			else if (midChar > c)
+				right = mid-1;
+			else
+				return mid;
+		}
+		return -(left+1);
+	}
+	
+	/**
+	 * Inserts a word.
+	 *
+	 * @param word Word (lowercase) to insert
+	 * @return True if the word was inserted, false if it was already in the trie
+	 */
+	public boolean insert(String word) {
+		String t = word + DynamicPrefixTree.TERMINATOR;
+		while (true) {
+			Node current = root.get();
+			Node updated = insert(current, t, 0);
+			if (updated == current)
+				return false;
+			if (root.compareAndSet(current, updated))
+				return true;
+		}
+	}
+	
+	/**
+	 * Returns a copy of node with the word t inserted below it, or node itself if t is
+	 * already there. The substring of node ends just before t.charAt(d).
+	 */
+	private static Node insert(Node node, String t, int d) {
+		Node[] children = node.children;
+		int i = find(children, t.charAt(d));
+		if (i < 0) {
+			Node leaf = new Node(t, d, t.length()-1, NO_CHILDREN, 1);
+			int at = -(i+1);
+			Node[] copy = new Node[children.length+1];
+			System.arraycopy(children, 0, copy, 0, at);
+			copy[at] = leaf;
+			System.arraycopy(children, at, copy, at+1, children.length - at);
+			return new Node(node.word, node.start, node.end, copy, node.count+1);
+		}
+		Node child = children[i];
+		int p = d+1;
+		while (p <= child.end && child.word.charAt(p) == t.charAt(p)) {
+			p++;
+		}
+		Node newChild;
+		if (p > child.end) {
+			if (child.isLeaf())
+				return node; // matched a whole leaf, terminator included
+			newChild = insert(child, t, p);
+			if (newChild == child)
+				return node;
+		} else {
+			// split the child at p
+			Node rest = new Node(child.word, p, child.end, child.children, child.count);
+			Node leaf = new Node(t, p, t.length()-1, NO_CHILDREN, 1);
+			Node[] pair = child.word.charAt(p) < t.charAt(p) ? new Node[] { rest, leaf } : new Node[] { leaf, rest };
+			newChild = new Node(child.word, child.start, p-1, pair, child.count+1);
+		}
+		Node[] copy = children.clone();
+		copy[i] = newChild;
+		return new Node(node.word, node.start, node.end, copy, node.count+1);
+	}
+	
+	/**
+	 * Deletes a word.
+	 *
+	 * @param word Word to delete
+	 * @return True if the word was deleted, false if it was not in the trie
+	 */
+	public boolean delete(String word) {
+		String t = word + DynamicPrefixTree.TERMINATOR;
+		while (true) {
+			Node current = root.get();
+			Node updated = delete(current, t, 0);
+			if (updated == current)
+				return false;
+			if (root.compareAndSet(current, updated))
+				return true;
+		}
+	}
+	
+	/**
+	 * Returns a copy of node with the word t deleted below it, or node itself if t is not
+	 * there. A node other than the root that is left with one child is merged with it.
+	 */
+	private static Node delete(Node node, String t, int d) {
+		Node[] children = node.children;
+		int i = find(children, t.charAt(d));
+		if (i < 0)
+			return node;
+		Node child = children[i];
+		for (int p = d+1; p <= child.end; p++) {
+			if (child.word.charAt(p) != t.charAt(p))
+				return node;
+		}
+		Node[] copy;
+		if (child.isLeaf()) {
+			copy = new Node[children.length-1];
+			System.arraycopy(children, 0, copy, 0, i);
+			System.arraycopy(children, i+1, copy, i, copy.length - i);
+		} else {
+			Node newChild = delete(child, t, child.end+1);
+			if (newChild == child)
+				return node;
+			copy = children.clone();
+			copy[i] = newChild;
+		}
+		if (node.word != null && copy.length == 1) {
+			Node only = copy[0];
+			return new Node(only.word, node.start, only.end, only.children, only.count);
+		}
+		return new Node(node.word, node.start, node.end, copy, node.count-1);
+	}
+	
+	/**
+	 * Finds the node at which a prefix ends in a snapshot.
+	 *
+	 * @return Node, or null if no word starts with the prefix
+	 */
+	private static Node locate(Node node, String prefix) {
+		int d = 0;
+		while (d < prefix.length()) {
+			int i = find(node.children, prefix.charAt(d));
+			if (i < 0)
+				return null;
+			node = node.children[i];
+			int end = Math.min(node.end+1, prefix.length());
+			for (d++; d < end; d++) {
+				if (node.word.charAt(d) != prefix.charAt(d))
+					return null;
+			}
+		}
+		return node;
+	}
+	
+	/**
+	 * Returns the "completion list" for a prefix, i.e. all the words in the trie that start
+	 * with the prefix, in sorted order, as of one instant. Never blocks.
+	 *
+	 * @param prefix Prefix to be completed with words in trie
+	 * @return List of all words that start with the prefix, or null if there are none
+	 */
+	public ArrayList<String> completionList(String prefix) {
+		Node node = locate(root.get(), prefix);
+		if (node == null || node.count == 0)
+			return null;
+		ArrayList<String> list = new ArrayList<String>(node.count);
+		Node[] stack = new Node[16];
+		int top = 0;
+		stack[top++] = node;
+		while (top > 0) {
+			Node n = stack[--top];
+			if (n.isLeaf()) {
+				list.add(n.word.substring(0, n.word.length()-1));
+				continue;
+			}
+			if (top + n.children.length > stack.length)
+				stack = Arrays.copyOf(stack, Math.max(stack.length*2, top + n.children.length));
+			for (int i = n.children.length-1; i >= 0; i--) {
+				stack[top++] = n.children[i];
+			}
+		}
+		return list;
+	}
+	
+	/**
+	 * Returns the number of words that start with a prefix, without listing them.
+	 *
+	 * @param prefix Prefix
+	 * @return Number of completions
+	 */
+	public int completionCount(String prefix) {
+		Node node = locate(root.get(), prefix);
+		return node == null ? 0 : node.count;
+	}
+	
+	/**
+	 * Tells if a word is in the trie.
+	 *
+	 * @param word Word
+	 * @return True if the word is in the trie
+	 */
+	public boolean contains(String word) {
+		Node node = locate(root.get(), word + DynamicPrefixTree.TERMINATOR);
+		return node != null;
+	}
+	
+	/**
+	 * Returns the number of words in the trie.
+	 *
+	 * @return Word count
+	 */
+	public int size() {
+		return root.get().count;
+	}
+}
@@ -0,0 +1,309 @@
+package prefixtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class implements a compressed trie of the same TrieNode structure as PrefixTree,
+ * that words can be inserted into and deleted from after it is built. The words are kept
+ * in a growable array owned by the trie, whose slots are reused after deletions.
+ *
+ * Each word is stored with a terminating '\0' character, so that a word which is a prefix
+ * of another still ends at a leaf of its own. Every inner node thus has at least two
+ * children, and a node left with one child after a deletion is merged with it.
+ *
+ * Children are kept in order of their first character, so completions come out sorted.
+ *
+ */
+public class DynamicPrefixTree {
+	
+	/**
+	 * Character appended to every stored word.
+	 */
+	static final char TERMINATOR = '\0';
+	
+	/**
+	 * Root of the trie.
+	 */
+	final TrieNode root = new TrieNode(null, null, null);
+	
+	/**
+	 * Stored (terminated) words, indexed by the wordIndex of nodes; null in free slots.
+	 */
+	String[] words;
+	
+	/**
+	 * Number of slots of words in use or freed; slots from here on have never been used.
+	 */
+	private int numSlots;
+	
+	/**
+	 * Stack of freed slots.
+	 */
+	private int[] freeSlots = new int[16];
+	
+	private int numFree;
+	
+	/**
+	 * Number of words in the trie.
+	 */
+	private int size;
+	
+	/**
+	 * Initializes an empty trie.
+	 */
+	public DynamicPrefixTree() {
+		words = new String[16];
+	}
+	
+	/**
+	 * Initializes a trie with all words in the input array, built in one pass as by
+	 * PrefixTree.buildTrie. The array is not modified. Duplicate words are stored once.
+	 *
+	 * @param allWords Input array of words (lowercase) to be inserted
+	 */
+	public DynamicPrefixTree(String[] allWords) {
+		String[] terminated = new String[allWords.length];
+		for (int i = 0; i < allWords.length; i++) {
+			terminated[i] = terminate(allWords[i]);
+		}
+		Arrays.sort(terminated);
+		int n = 0;
+		for (int i = 0; i < terminated.length; i++) {
+			if (n == 0 || !terminated[i].equals(terminated[n-1]))
+				terminated[n++] = terminated[i];
+		}
+		words = Arrays.copyOf(terminated, Math.max(n, 16));
+		numSlots = n;
+		size = n;
+		PrefixTree.build(words, 0, n, root);
+	}
+	
+	private static String terminate(String word) {
+		if (word.length() >= Short.MAX_VALUE) {
+			throw new IllegalArgumentException("word longer than " + (Short.MAX_VALUE-1) + " characters");
+		}
+		return word + TERMINATOR;
+	}
+	
+	/**
+	 * Stores a word in a free slot.
+	 */
+	private int allocate(String terminated) {
+		int slot;
+		if (numFree > 0) {
+			slot = freeSlots[--numFree];
+		} else {
+			if (numSlots == words.length)
+				words = Arrays.copyOf(words, words.length*2);
+			slot = numSlots++;
+		}
+		words[slot] = terminated;
+		return slot;
+	}
+	
+	private void release(int slot) {
+		words[slot] = null;
+		if (numFree == freeSlots.length)
+			freeSlots = Arrays.copyOf(freeSlots, numFree*2);
+		freeSlots[numFree++] = slot;
+	}
+	
+	/**
+	 * Inserts a word. A node whose substring only partly matches the word is split in two.
+	 *
+	 * @param word Word (lowercase) to insert
+	 * @return True if the word was inserted, false if it was already in the trie
+	 */
+	public boolean insert(String word) {
+		String t = terminate(word);
+		TrieNode node = root;
+		int d = 0;
+		while (true) {
+			char c = t.charAt(d);
+			TrieNode prev = null, child = node.firstChild;
+			while (child != null && firstChar(child) < c) {
+				prev = child;
+				child = child.sibling;
+			}
+			if (child == null || firstChar(child) != c) {
+				TrieNode leaf = new TrieNode(new Indexes(allocate(t), (short) d, (short) (t.length()-1)), null, child);
+				if (prev == null)
+					node.firstChild = leaf;
+				else
+					prev.sibling = leaf;
+				size++;
+				return true;
+			}
+			String label = words[child.substr.wordIndex];
+			int end = child.substr.endIndex;
+			int p = d+1;
+			while (p <= end && label.charAt(p) == t.charAt(p)) {
+				p++;
+			}
+			if (p > end) {
+				if (child.firstChild == null)
+					return false; // matched a whole leaf, terminator included
+				node = child;
+				d = p;
+				continue;
+			}
+			// split the child at p; the terminator guarantees that both words go on past p
+			TrieNode rest = new TrieNode(new Indexes(child.substr.wordIndex, (short) p, child.substr.endIndex),
+					child.firstChild, null);
+			TrieNode leaf = new TrieNode(new Indexes(allocate(t), (short) p, (short) (t.length()-1)), null, null);
+			child.substr.endIndex = (short) (p-1);
+			if (label.charAt(p) < t.charAt(p)) {
+				child.firstChild = rest;
+				rest.sibling = leaf;
+			} else {
+				child.firstChild = leaf;
+				leaf.sibling = rest;
+			}
+			size++;
+			return true;
+		}
+	}
+	
+	/**
+	 * Deletes a word. If its parent is left with a single child, the two are merged into
+	 * one node. Nodes that borrowed their substring from the deleted word are pointed at
+	 * another word below them, and the word's slot is freed.
+	 *
+	 * @param word Word to delete
+	 * @return True if the word was deleted, false if it was not in the trie
+	 */
+	public boolean delete(String word) {
+		if (word.length() >= Short.MAX_VALUE)
+			return false;
+		String t = word + TERMINATOR;
+		TrieNode[] path = new TrieNode[16];
+		int top = 0;
+		path[top++] = root;
+		TrieNode node = root, prev = null, child = null;
+		int d = 0;
+		while (true) {
+			char c = t.charAt(d);
+			prev = null;
+			child = node.firstChild;
+			while (child != null && firstChar(child) != c) {
+				prev = child;
+				child = child.sibling;
+			}
+			if (child == null)
+				return false;
+			String label = words[child.substr.wordIndex];
+			int end = child.substr.endIndex;
+			for (int p = d+1; p <= end; p++) {
+				if (label.charAt(p) != t.charAt(p))
+					return false;
+			}
+			if (child.firstChild == null)
+				break; // the leaf of the word
+			if (top == path.length)
+				path = Arrays.copyOf(path, top*2);
+			path[top++] = child;
+			node = child;
+			d = end+1;
+		}
+		
+		// unlink the leaf, and merge its parent with a remaining only child
+		int slot = child.substr.wordIndex;
+		if (prev == null)
+			node.firstChild = child.sibling;
+		else
+			prev.sibling = child.sibling;
+		if (node != root && node.firstChild.sibling == null) {
+			TrieNode only = node.firstChild;
+			node.substr = new Indexes(only.substr.wordIndex, node.substr.startIndex, only.substr.endIndex);
+			node.firstChild = only.firstChild;
+		}
+		// re-point ancestors that borrowed their substring from the word, deepest first
+		for (int i = top-1; i > 0; i--) {
+			TrieNode ancestor = path[i];
+			if (ancestor.substr.wordIndex == slot)
+				ancestor.substr.wordIndex = ancestor.firstChild.substr.wordIndex;
+		}
+		release(slot);
+		size--;
+		return true;
+	}
+	
+	private char firstChar(TrieNode node) {
+		return words[node.substr.wordIndex].charAt(node.substr.startIndex);
+	}
+	
+	/**
+	 * Tells if a word is in the trie.
+	 *
+	 * @param word Word
+	 * @return True if the word was inserted and not deleted since
+	 */
+	public boolean contains(String word) {
+		final String t = word + TERMINATOR;
+		final boolean[] found = new boolean[1];
+		PrefixTree.completions(root, words, t, new CompletionVisitor() {
+			public boolean visit(TrieNode leaf) {
+				found[0] = true;
+				return false;
+			}
+		});
+		return found[0];
+	}
+	
+	/**
+	 * Walks the completion list for a prefix, as PrefixTree.completions does.
+	 *
+	 * @param prefix Prefix to be completed with words in trie
+	 * @param visitor Receiver of the leaf nodes; word(leaf) gives the word of each
+	 * @return Number of leaf nodes passed to the visitor
+	 */
+	public int completions(String prefix, CompletionVisitor visitor) {
+		return PrefixTree.completions(root, words, prefix, visitor);
+	}
+	
+	/**
+	 * Returns the "completion list" for a prefix, i.e. all the words in the trie that start
+	 * with the prefix, in sorted order.
+	 *
+	 * @param prefix Prefix to be completed with words in trie
+	 * @return List of all words that start with the prefix, or null if there are none
+	 */
+	public ArrayList<String> completionList(String prefix) {
+		final ArrayList<String> list = new ArrayList<String>();
+		completions(prefix, new CompletionVisitor() {
+			public boolean visit(TrieNode leaf) {
+				list.add(word(leaf));
+				return true;
+			}
+		});
+		return list.isEmpty() ? null : list;
+	}
+	
+	/**
+	 * Returns the word held at a leaf node.
+	 *
+	 * @param leaf Leaf node
+	 * @return Word, without its terminator
+	 */
+	public String word(TrieNode leaf) {
+		String t = words[leaf.substr.wordIndex];
+		return t.substring(0, t.length()-1);
+	}
+	
+	/**
+	 * Returns the number of words in the trie.
+	 *
+	 * @return Word count
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Prints the trie, as PrefixTree.print does.
+	 */
+	public void print() {
+		PrefixTree.print(root, words);
+	}
+}
@@ -0,0 +1,317 @@
+package prefixtree;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Scanner;
+
+/**
+ * This class serves completion queries directly from a trie image file mapped into memory.
+ * The image is the flat array layout of a CompactTrie written out as is, so opening it
+ * needs no parsing and creates no node objects: the operating system pages the file in as
+ * queries touch it, and processes that map the same image share its pages.
+ *
+ * Image layout (big-endian):
+ *
+ * - header: magic, version, number of words, number of nodes, number of word chars, 0
+ * - nodes, 24 bytes each: childStart, wordsFrom, wordsTo, labelStart, labelLength,
+ *   firstChar, 2 bytes of padding (see CompactTrie for the meaning of each)
+ * - word weights, 8 bytes each
+ * - word offsets into the chars, numWords+1 ints
+ * - word chars, 2 bytes each
+ *
+ * A node's substring is read from the first word below it. Images are limited to 2 GB.
+ *
+ */
+public class MappedTrie {
+	
+	private static final int MAGIC = 0x50545249; // "PTRI"
+	
+	private static final int VERSION = 1;
+	
+	private static final int HEADER_BYTES = 24;
+	
+	private static final int NODE_BYTES = 24;
+	
+	private final MappedByteBuffer image;
+	
+	private final int numWords, numNodes;
+	
+	/**
+	 * Positions of the sections in the image.
+	 */
+	private final int weightsPos, offsetsPos, charsPos;
+	
+	private MappedTrie(MappedByteBuffer image)
+	throws IOException {
+		this.image = image;
+		if (image.capacity() < HEADER_BYTES || image.getInt(0) != MAGIC || image.getInt(4) != VERSION) {
+			throw new IOException("not a version " + VERSION + " trie image");
+		}
+		numWords = image.getInt(8);
+		numNodes = image.getInt(12);
+		int numChars = image.getInt(16);
+		weightsPos = HEADER_BYTES + numNodes*NODE_BYTES;
+		offsetsPos = weightsPos + numWords*8;
+		charsPos = offsetsPos + (numWords+1)*4;
+		if (charsPos + (long) numChars*2 != image.capacity()) {
+			throw new IOException("truncated trie image");
+		}
+	}
+	
+	/**
+	 * Writes the image of a trie to a file.
+	 *
+	 * @param trie Trie
+	 * @param file Image file, replaced if it exists
+	 * @throws IOException If the file cannot be written
+	 */
+	public static void write(CompactTrie trie, File file)
+	throws IOException {
+		int numWords = trie.size();
+		long numChars = trie.chars.length;
+		long size = HEADER_BYTES + (long) trie.numNodes*NODE_BYTES + numWords*8L
+				+ (numWords+1)*4L + numChars*2;
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("trie too large for an image: " + size + " bytes");
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(numWords);
+			out.writeInt(trie.numNodes);
+			out.writeInt((int) numChars);
+			out.writeInt(0);
+			for (int n = 0; n < trie.numNodes; n++) {
+				out.writeInt(trie.childStart[n]);
+				out.writeInt(trie.wordsFrom[n]);
+				out.writeInt(trie.wordsTo[n]);
+				out.writeInt(trie.labelStart[n]);
+				out.writeInt(trie.labelLength[n]);
+				out.writeChar(trie.firstChar[n]);
+				out.writeChar(0);
+			}
+			for (long weight: trie.weights) {
+				out.writeLong(weight);
+			}
+			for (int offset: trie.wordStart) {
+				out.writeInt(offset);
+			}
+			for (char c: trie.chars) {
+				out.writeChar(c);
+			}
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Maps an image file into memory. The file stays mapped as long as the returned object
+	 * is reachable.
+	 *
+	 * @param file Image file written by write
+	 * @return Trie served from the file
+	 * @throws IOException If the file cannot be read or is not a trie image
+	 */
+	public static MappedTrie open(File file)
+	throws IOException {
+		FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			return new MappedTrie(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+		} finally {
+			ch.close(); // the mapping outlives the channel
+		}
+	}
+	
+	private int childStart(int node) {
+		return image.getInt(HEADER_BYTES + node*NODE_BYTES);
+	}
+	
+	private int childEnd(int node) {
+		return node+1 < numNodes ? image.getInt(HEADER_BYTES + (node+1)*NODE_BYTES) : numNodes;
+	}
+	
+	private int wordsFrom(int node) {
+		return image.getInt(HEADER_BYTES + node*NODE_BYTES + 4);
+	}
+	
+	private int wordsTo(int node) {
+		return image.getInt(HEADER_BYTES + node*NODE_BYTES + 8);
+	}
+	
+	private int labelEnd(int node) {
+		int at = HEADER_BYTES + node*NODE_BYTES;
+		return image.getInt(at + 12) + image.getInt(at + 16);
+	}
+	
+	private char firstChar(int node) {
+		return image.getChar(HEADER_BYTES + node*NODE_BYTES + 20);
+	}
+	
+	private int wordOffset(int word) {
+		return image.getInt(offsetsPos + word*4);
+	}
+	
+	private char wordChar(int word, int i) {
+		return image.getChar(charsPos + (wordOffset(word) + i)*2);
+	}
+	
+	private int wordLength(int word) {
+		return wordOffset(word+1) - wordOffset(word);
+	}
+	
+	private String word(int word) {
+		int from = wordOffset(word), len = wordOffset(word+1) - from;
+		char[] chars = new char[len];
+		for (int i = 0; i < len; i++) {
+			chars[i] = image.getChar(charsPos + (from + i)*2);
+		}
+		return new String(chars);
+	}
+	
+	private int child(int node, char c) {
+		int left = childStart(node), right = childEnd(node)-1;
+		while (left <= right) {
+			int mid = (left + right) >>> 1;
+			char midChar = firstChar(mid);
+			if (midChar < c)
+				left = mid+1;
+			else if (midChar > c)
+				right = mid-1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Finds the highest node all of whose words start with the prefix, as CompactTrie.locate.
+	 */
+	private int locate(String prefix) {
+		int node = 0;
+		int d = 0;
+		while (d < prefix.length()) {
+			int child = child(node, prefix.charAt(d));
+			if (child < 0)
+				return -1;
+			int word = wordsFrom(child);
+			int end = Math.min(labelEnd(child), prefix.length());
+			for (d++; d < end; d++) {
+				if (wordChar(word, d) != prefix.charAt(d))
+					return -1;
+			}
+			node = child;
+		}
+		return node;
+	}
+	
+	/**
+	 * Returns the "completion list" for a prefix, i.e. all the words in the trie that start
+	 * with the prefix, in sorted order.
+	 *
+	 * @param prefix Prefix to be completed with words in trie
+	 * @return List of all words that start with the prefix, or null if there are none
+	 */
+	public ArrayList<String> completionList(String prefix) {
+		int node = locate(prefix);
+		if (node < 0 || wordsFrom(node) == wordsTo(node))
+			return null;
+		ArrayList<String> list = new ArrayList<String>(wordsTo(node) - wordsFrom(node));
+		for (int i = wordsFrom(node); i < wordsTo(node); i++) {
+			list.add(word(i));
+		}
+		return list;
+	}
+	
+	/**
+	 * Returns the number of words that start with a prefix.
+	 *
+	 * @param prefix Prefix
+	 * @return Number of completions
+	 */
+	public int completionCount(String prefix) {
+		int node = locate(prefix);
+		return node < 0 ? 0 : wordsTo(node) - wordsFrom(node);
+	}
+	
+	/**
+	 * Finds a word.
+	 *
+	 * @return Index of the word, or -1 if it is not in the trie
+	 */
+	private int find(String word) {
+		int node = locate(word);
+		if (node < 0 || labelEnd(node) != word.length() || wordsFrom(node) == wordsTo(node)
+				|| wordLength(wordsFrom(node)) != word.length())
+			return -1;
+		return wordsFrom(node);
+	}
+	
+	/**
+	 * Returns the weight of a word.
+	 *
+	 * @param word Word
+	 * @return Weight, or -1 if the word is not in the trie
+	 */
+	public long weight(String word) {
+		int i = find(word);
+		return i < 0 ? -1 : image.getLong(weightsPos + i*8);
+	}
+	
+	/**
+	 * Tells if a word is in the trie.
+	 *
+	 * @param word Word
+	 * @return True if the word is in the trie
+	 */
+	public boolean contains(String word) {
+		return find(word) >= 0;
+	}
+	
+	/**
+	 * Returns the number of words in the trie.
+	 *
+	 * @return Word count
+	 */
+	public int size() {
+		return numWords;
+	}
+	
+	/**
+	 * Returns the number of nodes in the trie, including the root.
+	 *
+	 * @return Node count
+	 */
+	public int nodeCount() {
+		return numNodes;
+	}
+	
+	/**
+	 * Writes the image of a words file, in the format read by PrefixTreeApp:
+	 * MappedTrie wordsFile imageFile
+	 */
+	public static void main(String[] args)
+	throws IOException {
+		if (args.length < 2) {
+			System.out.println("usage: MappedTrie wordsFile imageFile");
+			return;
+		}
+		Scanner sc = new Scanner(new File(args[0]));
+		int numWords = Integer.parseInt(sc.nextLine());
+		String[] allWords = new String[numWords];
+		for (int i = 0; i < allWords.length; i++) {
+			allWords[i] = sc.nextLine().trim().toLowerCase();
+		}
+		sc.close();
+		CompactTrie trie = new CompactTrie(allWords);
+		write(trie, new File(args[1]));
+		System.out.println("wrote " + trie.size() + " words, " + trie.nodeCount() + " nodes to " + args[1]);
+	}
+}
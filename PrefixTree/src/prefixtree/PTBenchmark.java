@@ -0,0 +1,264 @@
+package prefixtree;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class measures trie build time, completion latency and memory on a dictionary made
+ * by WordGenerator, for each of the trie layouts. Each benchmark is run for a number of
+ * warmup iterations, so that the JIT compiler settles, and then for a number of measured
+ * iterations; the median iteration is reported, in nanoseconds per operation and
+ * operations per second, as by SEBenchmark.
+ *
+ * Completion prefixes are taken from the dictionary, so every one has completions, and are
+ * measured separately for each prefix length from 1 to 8: short prefixes have large
+ * completion lists, long ones are mostly descent.
+ *
+ * PrefixTree keeps only the words that are not a prefix of another word, as only leaves
+ * hold words, and WordGenerator's dictionary has many such words: every stem that also
+ * comes in an inflected form. PrefixTree is therefore reported on its own, with the number
+ * of words it really holds: its memory is divided by that number, and its completions per
+ * prefix are printed next to those of the other layouts, which hold every word.
+ *
+ * Memory is the used heap, after garbage collection, that a trie holds on to, divided by
+ * the number of words it holds. The words array is reported on its own: PrefixTree needs the
+ * caller to keep it, while the flat layouts copy what they need. Run with a fixed heap
+ * (e.g. -Xms2g -Xmx2g) for steadier figures.
+ *
+ * Usage: PTBenchmark [numWords [queries]]
+ *
+ */
+public class PTBenchmark {
+	
+	/**
+	 * A unit of benchmark work.
+	 */
+	interface Task {
+		/**
+		 * Runs one iteration.
+		 *
+		 * @return Number of operations done
+		 */
+		long run() throws Exception;
+	}
+	
+	static final int WARMUPS = 5;
+	static final int ITERATIONS = 10;
+	
+	static final int MAX_PREFIX = 8;
+	
+	/**
+	 * Sink for results, so that the JIT compiler can't drop the benchmarked work.
+	 */
+	static volatile long sink;
+	
+	public static void main(String[] args)
+	throws Exception {
+		int numWords = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int numQueries = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		
+		WordGenerator gen = new WordGenerator(42);
+		final String[] words = gen.dictionary(numWords);
+		final long[] weights = gen.weights(numWords);
+		long chars = 0;
+		for (String word: words) {
+			chars += word.length();
+		}
+		System.out.printf("dictionary: %d words, %.1f chars per word%n", numWords, (double) chars / numWords);
+		String[] counted = words.clone();
+		int prefixTreeWords = PrefixTree.completionList(PrefixTree.buildTrie(counted), counted, "").size();
+		System.out.printf("PrefixTree holds %d of them, the words that are not a prefix of another word%n",
+				prefixTreeWords);
+		
+		// before anything else is left on the heap
+		memory(words, weights, prefixTreeWords);
+		
+		measure("PrefixTree.buildTrie", new Task() {
+			public long run() {
+				sink += PrefixTree.buildTrie(words.clone()).hashCode();
+				return words.length;
+			}
+		});
+		measure("PrefixTree.buildTrieParallel", new Task() {
+			public long run() {
+				sink += PrefixTree.buildTrieParallel(words.clone()).hashCode();
+				return words.length;
+			}
+		});
+		measure("CompactTrie", new Task() {
+			public long run() {
+				sink += new CompactTrie(words, weights).nodeCount();
+				return words.length;
+			}
+		});
+		measure("Utf8Trie", new Task() {
+			public long run() {
+				sink += new Utf8Trie(words).nodeCount();
+				return words.length;
+			}
+		});
+		measure("DynamicPrefixTree.insert", new Task() {
+			public long run() {
+				DynamicPrefixTree trie = new DynamicPrefixTree();
+				for (String word: words) {
+					trie.insert(word);
+				}
+				sink += trie.size();
+				return words.length;
+			}
+		});
+		
+		final String[] sorted = words.clone();
+		final TrieNode root = PrefixTree.buildTrie(sorted);
+		final CompactTrie compact = new CompactTrie(words, weights);
+		final Utf8Trie utf8 = new Utf8Trie(words);
+		final ConcurrentPrefixTree concurrent = new ConcurrentPrefixTree(words);
+		File image = File.createTempFile("pt-bench", ".trie");
+		image.deleteOnExit();
+		MappedTrie.write(compact, image);
+		final MappedTrie mapped = MappedTrie.open(image);
+		
+		Random random = new Random(7);
+		for (int length = 1; length <= MAX_PREFIX; length++) {
+			final String[] prefixes = prefixes(words, length, numQueries, random);
+			long completions = 0, prefixTreeCompletions = 0;
+			for (String prefix: prefixes) {
+				completions += compact.completionCount(prefix);
+				prefixTreeCompletions += PrefixTree.completionList(root, sorted, prefix).size();
+			}
+			System.out.printf("prefix length %d: %.1f completions per prefix (PrefixTree: %.1f)%n", length,
+					(double) completions / numQueries, (double) prefixTreeCompletions / numQueries);
+			measure("  PrefixTree.completionList", new Task() {
+				public long run() {
+					for (String prefix: prefixes) {
+						sink += PrefixTree.completionList(root, sorted, prefix).size();
+					}
+					return prefixes.length;
+				}
+			});
+			measure("  CompactTrie.completionList", new Task() {
+				public long run() {
+					for (String prefix: prefixes) {
+						sink += compact.completionList(prefix).size();
+					}
+					return prefixes.length;
+				}
+			});
+			measure("  CompactTrie.topK(10)", new Task() {
+				public long run() {
+					for (String prefix: prefixes) {
+						sink += compact.topK(prefix, 10).size();
+					}
+					return prefixes.length;
+				}
+			});
+			measure("  CompactTrie.fuzzyCompletions(1, 10)", new Task() {
+				public long run() {
+					for (String prefix: prefixes) {
+						sink += compact.fuzzyCompletions(prefix, 1, 10).size();
+					}
+					return prefixes.length;
+				}
+			});
+			measure("  Utf8Trie.completionList", new Task() {
+				public long run() {
+					for (String prefix: prefixes) {
+						sink += utf8.completionList(prefix).size();
+					}
+					return prefixes.length;
+				}
+			});
+			measure("  ConcurrentPrefixTree.completionList", new Task() {
+				public long run() {
+					for (String prefix: prefixes) {
+						sink += concurrent.completionList(prefix).size();
+					}
+					return prefixes.length;
+				}
+			});
+			measure("  MappedTrie.completionList", new Task() {
+				public long run() {
+					for (String prefix: prefixes) {
+						sink += mapped.completionList(prefix).size();
+					}
+					return prefixes.length;
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Prints the memory per word of each trie layout, per word it holds.
+	 */
+	private static void memory(String[] words, long[] weights, int prefixTreeWords) {
+		int numWords = words.length;
+		System.out.println("memory per word:");
+		reportMemory("words (String[] of the dictionary)", numWords, new Object[] { new WordGenerator(42).dictionary(numWords) });
+		reportMemory("PrefixTree (" + prefixTreeWords + " words)", prefixTreeWords, new Object[] { PrefixTree.buildTrie(words.clone()) });
+		reportMemory("DynamicPrefixTree", numWords, new Object[] { new DynamicPrefixTree(words) });
+		reportMemory("ConcurrentPrefixTree", numWords, new Object[] { new ConcurrentPrefixTree(words) });
+		reportMemory("CompactTrie", numWords, new Object[] { new CompactTrie(words, weights) });
+		reportMemory("Utf8Trie", numWords, new Object[] { new Utf8Trie(words) });
+	}
+	
+	/**
+	 * Draws prefixes of the given length from words at least that long.
+	 */
+	private static String[] prefixes(String[] words, int length, int count, Random random) {
+		String[] prefixes = new String[count];
+		int n = 0;
+		while (n < count) {
+			String word = words[random.nextInt(words.length)];
+			if (word.length() >= length)
+				prefixes[n++] = word.substring(0, length);
+		}
+		return prefixes;
+	}
+	
+	/**
+	 * Runs a task on one thread and prints the median iteration.
+	 */
+	static void measure(String name, Task task)
+	throws Exception {
+		for (int i = 0; i < WARMUPS; i++) {
+			task.run();
+		}
+		double[] nsPerOp = new double[ITERATIONS];
+		for (int i = 0; i < ITERATIONS; i++) {
+			long start = System.nanoTime();
+			long ops = task.run();
+			nsPerOp[i] = (double) (System.nanoTime() - start) / ops;
+		}
+		report(name, nsPerOp);
+	}
+	
+	private static void report(String name, double[] nsPerOp) {
+		Arrays.sort(nsPerOp);
+		double median = nsPerOp[nsPerOp.length / 2];
+		System.out.printf("%-45s %14.1f ns/op %14.1f ops/s  (min %.1f, max %.1f)%n",
+				name, median, 1e9 / median, nsPerOp[0], nsPerOp[nsPerOp.length-1]);
+	}
+	
+	private static void reportMemory(String name, int numWords, Object[] holder) {
+		System.out.printf("%-45s %14.1f bytes/word%n", "  " + name, (double) usedAfter(holder) / numWords);
+	}
+	
+	/**
+	 * Returns the used heap held by the object in holder[0], and clears it.
+	 */
+	private static long usedAfter(Object[] holder) {
+		long with = usedHeap();
+		holder[0] = null;
+		long without = usedHeap();
+		return with - without;
+	}
+	
+	private static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+}
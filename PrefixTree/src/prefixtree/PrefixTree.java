@@ -2,6 +2,13 @@ package prefixtree;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * This class implements a Trie. 
@@ -15,8 +22,10 @@ public class PrefixTree {
 	private PrefixTree() { }
 	
 	/**
-	 * Builds a trie by inserting all words in the input array, one at a time,
-	 * in sequence FROM FIRST TO LAST. (The sequence is IMPORTANT!)
+	 * Builds a trie of all words in the input array. The array is sorted in place, and the
+	 * trie is then built in a single pass: since each word shares its longest common prefix
+	 * with the word before it, only the nodes on the previous word's path can change. The
+	 * trie is the same as if the sorted words were inserted one at a time, from first to last.
 	 * The words in the input array are all lower case.
 	 * 
 	 * @param allWords Input array of words (lowercase) to be inserted.
@@ -25,67 +34,107 @@ public class PrefixTree {
 	public static TrieNode buildTrie(String[] allWords) {
 		TrieNode root = new TrieNode(null, null, null);
 		Arrays.sort(allWords);
-		for (int i = 0; i < allWords.length; i++) {
-				insert(allWords, root, i, (short) 0);
-		}
-		
+		build(allWords, 0, allWords.length, root);
 		return root;
 	}
 	
-	private static TrieNode insert(String[] allWords, TrieNode root, int wordIndex, short startIndex) {
-		TrieNode ptr = root.firstChild;
-		TrieNode prev = null;
-		String newWord = allWords[wordIndex].substring(startIndex);
-		
-		while (ptr != null) {
-			if (newWord.charAt(0) == allWords[ptr.substr.wordIndex].charAt(ptr.substr.startIndex)) { // prefix match
-				String ptrWord = allWords[ptr.substr.wordIndex].substring(ptr.substr.startIndex,ptr.substr.endIndex+1);
-				int letterCount = 0; // number of matched letters in prefix
-				startIndex--; // adjust startIndex for loop
-				for (int j = 0; j < ptrWord.length(); j++) {
-					if (newWord.charAt(j) == ptrWord.charAt(j)) {
-						startIndex++;
-						letterCount++;
-					}
-					else
-						break;
-				}
-				// if entire substring matched, go to next child
-				if (letterCount == ptrWord.length()) {
-					insert(allWords, ptr, wordIndex, ++startIndex);
-					return root;
-				} else {
-					ptr.substr.endIndex = (short) (ptr.substr.startIndex + letterCount - 1);
-					// if ptr already contains a firstChild, make new firstChild point to old
-					if (ptr.firstChild != null) {
-						Indexes childIndex1 = new Indexes (ptr.substr.wordIndex, (short) (ptr.substr.startIndex+letterCount), (short)(ptr.substr.endIndex+letterCount));
-						TrieNode newFirstChild = new TrieNode(childIndex1, ptr.firstChild, null);
-						ptr.firstChild = newFirstChild;
-					} else {
-						Indexes childIndex1 = new Indexes (ptr.substr.wordIndex, (short) (ptr.substr.startIndex+letterCount), (short)(allWords[ptr.substr.wordIndex].length()-1));
-						ptr.firstChild = new TrieNode(childIndex1, null, null);
-					}
-
-					Indexes childIndex2 = new Indexes (wordIndex, ++startIndex, (short) (allWords[wordIndex].length()-1));
-					ptr.firstChild.sibling = new TrieNode(childIndex2, null, null);
-					return root;
-				}
-			} else {
-				prev = ptr;
-				ptr = ptr.sibling;
-				continue;
+	/**
+	 * Builds the same trie as buildTrie, using the common fork-join pool. The words are
+	 * sorted in parallel, and the subtrees of words with different first letters are built
+	 * in parallel, then linked together as siblings.
+	 * 
+	 * @param allWords Input array of words (lowercase) to be inserted.
+	 * @return Root of trie with all words inserted from the input array
+	 */
+	public static TrieNode buildTrieParallel(final String[] allWords) {
+		TrieNode root = new TrieNode(null, null, null);
+		Arrays.parallelSort(allWords);
+		ArrayList<Callable<TrieNode>> tasks = new ArrayList<Callable<TrieNode>>();
+		int from = 0;
+		while (from < allWords.length) {
+			int first = firstChar(allWords[from]);
+			int to = from+1;
+			while (to < allWords.length && firstChar(allWords[to]) == first) {
+				to++;
 			}
+			final int lo = from, hi = to;
+			tasks.add(new Callable<TrieNode>() {
+				public TrieNode call() {
+					TrieNode subRoot = new TrieNode(null, null, null);
+					build(allWords, lo, hi, subRoot);
+					return subRoot.firstChild;
+				}
+			});
+			from = to;
 		}
-		// if no matches with siblings, create new sibling
-		Indexes newIndexes = new Indexes(wordIndex, startIndex, (short) (allWords[wordIndex].length()-1));
-		if (prev == null) {
-			root.firstChild = new TrieNode(newIndexes, null, null);
-		} else {
-			prev.sibling = new TrieNode(newIndexes, null, null);
+		TrieNode last = null;
+		try {
+			for (Future<TrieNode> result: ForkJoinPool.commonPool().invokeAll(tasks)) {
+				TrieNode first = result.get();
+				if (last == null)
+					root.firstChild = first;
+				else
+					last.sibling = first;
+				for (last = first; last.sibling != null; last = last.sibling);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
 		}
 		return root;
 	}
 	
+	private static int firstChar(String word) {
+		return word.isEmpty() ? -1 : word.charAt(0);
+	}
+	
+	/**
+	 * Builds the trie of the sorted words allWords[from..to-1] under the given root, which
+	 * must have no children. The path from the root to the last word's leaf is kept on a
+	 * stack. Each new word branches off that path where its common prefix with the last
+	 * word ends: the nodes below the branching point are popped, the node it falls inside
+	 * of (if any) is split, and the new leaf is added as the last child.
+	 */
+	static void build(String[] allWords, int from, int to, TrieNode root) {
+		TrieNode[] path = new TrieNode[16];
+		int top = 0;
+		path[top++] = root;
+		for (int i = from; i < to; i++) {
+			String word = allWords[i];
+			int common = 0;
+			if (i > from) {
+				String prev = allWords[i-1];
+				int max = Math.min(prev.length(), word.length());
+				while (common < max && prev.charAt(common) == word.charAt(common)) {
+					common++;
+				}
+			}
+			TrieNode lastChild = null;
+			while (top > 1 && path[top-1].substr.startIndex >= common) {
+				lastChild = path[--top];
+			}
+			TrieNode parent = path[top-1];
+			if (parent.substr != null && parent.substr.endIndex >= common) {
+				// split the parent, moving its children under the rest of its substring
+				Indexes restIndex = new Indexes(parent.substr.wordIndex, (short) common, parent.substr.endIndex);
+				TrieNode rest = new TrieNode(restIndex, parent.firstChild, null);
+				parent.substr.endIndex = (short) (common-1);
+				parent.firstChild = rest;
+				lastChild = rest;
+			}
+			TrieNode leaf = new TrieNode(new Indexes(i, (short) common, (short) (word.length()-1)), null, null);
+			if (lastChild == null)
+				parent.firstChild = leaf;
+			else
+				lastChild.sibling = leaf;
+			if (top == path.length)
+				path = Arrays.copyOf(path, top*2);
+			path[top++] = leaf;
+		}
+	}
+	
 	/**
 	 * Given a trie, returns the "completion list" for a prefix, i.e. all the leaf nodes in the 
 	 * trie whose words start with this prefix. 
@@ -96,6 +145,7 @@ public class PrefixTree {
 	 * (The last example shows that an input prefix can be an entire word.) 
 	 * The order of returned leaf nodes DOES NOT MATTER. So, for prefix "be",
 	 * the returned list of leaf nodes can be either hold [bear,bell] or [bell,bear].
+	 * The leaf nodes are collected by completions.
 	 *
 	 * @param root Root of Trie that stores all words to search on for completion lists
 	 * @param allWords Array of words that have been inserted into the trie
@@ -106,52 +156,394 @@ public class PrefixTree {
 	 */
 	public static ArrayList<TrieNode> completionList(TrieNode root,
 										String[] allWords, String prefix) {
-		/** COMPLETE THIS METHOD **/
-		TrieNode ptr = root;
-		ArrayList<TrieNode> list = new ArrayList<TrieNode>();
-		
-		if (!prefix.isEmpty() && ptr.firstChild == null) 
+		final ArrayList<TrieNode> list = new ArrayList<TrieNode>();
+		completions(root, allWords, prefix, new CompletionVisitor() {
+			public boolean visit(TrieNode leaf) {
+				list.add(leaf);
+				return true;
+			}
+		});
+		if (list.isEmpty())
+			return null;
+		else
 			return list;
+	}
+	
+	/**
+	 * Walks the completion list for a prefix, passing each leaf node to a visitor as it is
+	 * found, in the order of the trie (sorted order for a trie made by buildTrie). The trie
+	 * is walked with an explicit stack, and the prefix is compared in place with the words
+	 * in allWords, so no strings or lists are created.
+	 * 
+	 * @param root Root of Trie that stores all words to search on for completion lists
+	 * @param allWords Array of words that have been inserted into the trie
+	 * @param prefix Prefix to be completed with words in trie
+	 * @param visitor Receiver of the leaf nodes, which can stop the walk early
+	 * @return Number of leaf nodes passed to the visitor
+	 */
+	public static int completions(TrieNode root, String[] allWords, String prefix,
+			CompletionVisitor visitor) {
+		TrieNode ptr = locate(root, 0, allWords, prefix, null);
+		return ptr == null ? 0 : walk(ptr, visitor);
+	}
+	
+	/**
+	 * Descends to the highest node that covers the whole prefix, starting from a node that
+	 * covers its first matched characters exactly. If path is given, the nodes descended
+	 * into are pushed on it.
+	 * 
+	 * @return Node, or null if no word starts with the prefix
+	 */
+	private static TrieNode locate(TrieNode ptr, int matched, String[] allWords, String prefix, Path path) {
+		while (matched < prefix.length()) {
+			char c = prefix.charAt(matched);
+			TrieNode child = ptr.firstChild;
+			while (child != null && allWords[child.substr.wordIndex].charAt(child.substr.startIndex) != c) {
+				child = child.sibling;
+			}
+			if (child == null)
+				return null; // no match found
+			String word = allWords[child.substr.wordIndex];
+			int end = Math.min(child.substr.endIndex+1, prefix.length());
+			for (matched++; matched < end; matched++) {
+				if (word.charAt(matched) != prefix.charAt(matched))
+					return null;
+			}
+			ptr = child;
+			if (path != null)
+				path.push(child);
+		}
+		return ptr;
+	}
+	
+	/**
+	 * Passes the leaf nodes below a node (or the node itself, if it is a leaf) to a visitor.
+	 * 
+	 * @return Number of leaf nodes passed to the visitor
+	 */
+	private static int walk(TrieNode ptr, CompletionVisitor visitor) {
+		if (ptr.firstChild == null) {
+			if (ptr.substr == null) // empty trie
+				return 0;
+			visitor.visit(ptr);
+			return 1;
+		}
+		// each stack entry is a node whose subtree, and those of its later siblings, are
+		// still to be walked; at most one entry is pending per level
+		TrieNode[] stack = new TrieNode[16];
+		int top = 0;
+		int count = 0;
+		stack[top++] = ptr.firstChild;
+		while (top > 0) {
+			TrieNode node = stack[--top];
+			while (true) {
+				if (node.sibling != null) {
+					if (top == stack.length)
+						stack = Arrays.copyOf(stack, top*2);
+					stack[top++] = node.sibling;
+				}
+				if (node.firstChild == null) {
+					count++;
+					if (!visitor.visit(node))
+						return count;
+					break;
+				}
+				node = node.firstChild;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * The nodes from the root down to where the last prefix of a batch ended.
+	 */
+	private static final class Path {
+		
+		TrieNode[] nodes = new TrieNode[16];
 		
-		else if (prefix.isEmpty() && ptr.firstChild == null)
-			list.add(ptr);
+		int top;
 		
-		else if (prefix.isEmpty() && ptr.firstChild != null) {
-			ptr = ptr.firstChild;
-			while(ptr != null) {
-				list.addAll(completionList(ptr, allWords, prefix));
-				ptr = ptr.sibling;
+		void push(TrieNode node) {
+			if (top == nodes.length)
+				nodes = Arrays.copyOf(nodes, top*2);
+			nodes[top++] = node;
+		}
+	}
+	
+	/**
+	 * Batch size below which completionListsParallel does not split a batch any further.
+	 */
+	static final int MIN_PARALLEL_BATCH = 64;
+	
+	/**
+	 * Returns the completion lists for a batch of prefixes, as completionList would return
+	 * them one by one. The prefixes are answered in sorted order, so that each one shares
+	 * its descent with the one before it: the walk resumes from the deepest node on the
+	 * previous path that is covered by their common prefix, rather than from the root. A
+	 * prefix that ends at the same node as the one before it gets a copy of its list
+	 * without walking the subtree again.
+	 * 
+	 * @param root Root of Trie that stores all words to search on for completion lists
+	 * @param allWords Array of words that have been inserted into the trie
+	 * @param prefixes Prefixes to be completed, in any order (sorted order is cheapest);
+	 *        the array is not modified
+	 * @return Completion list of each prefix, at the prefix's index; null for a prefix
+	 *         that no word starts with
+	 */
+	public static ArrayList<ArrayList<TrieNode>> completionLists(TrieNode root,
+			String[] allWords, String[] prefixes) {
+		ArrayList<ArrayList<TrieNode>> results = emptyResults(prefixes.length);
+		completionLists(root, allWords, prefixes, sortedOrder(prefixes), 0, prefixes.length, results);
+		return results;
+	}
+	
+	/**
+	 * Returns the completion lists for a batch of prefixes as completionLists does, using
+	 * the common fork-join pool. The sorted batch is split into contiguous runs, so that
+	 * prefixes that share descent work mostly stay in the same run.
+	 * 
+	 * @param root Root of Trie that stores all words to search on for completion lists
+	 * @param allWords Array of words that have been inserted into the trie
+	 * @param prefixes Prefixes to be completed, in any order; the array is not modified
+	 * @return Completion list of each prefix, at the prefix's index; null for a prefix
+	 *         that no word starts with
+	 */
+	public static ArrayList<ArrayList<TrieNode>> completionListsParallel(final TrieNode root,
+			final String[] allWords, final String[] prefixes) {
+		final ArrayList<ArrayList<TrieNode>> results = emptyResults(prefixes.length);
+		final int[] order = sortedOrder(prefixes);
+		ForkJoinPool.commonPool().invoke(new BatchTask(root, allWords, prefixes, order, 0, prefixes.length, results));
+		return results;
+	}
+	
+	/**
+	 * Answers the prefixes order[from..to-1] of a batch, splitting large runs in two.
+	 */
+	private static final class BatchTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		final TrieNode root;
+		final String[] allWords, prefixes;
+		final int[] order;
+		final int from, to;
+		final ArrayList<ArrayList<TrieNode>> results;
+		
+		BatchTask(TrieNode root, String[] allWords, String[] prefixes, int[] order, int from, int to,
+				ArrayList<ArrayList<TrieNode>> results) {
+			this.root = root;
+			this.allWords = allWords;
+			this.prefixes = prefixes;
+			this.order = order;
+			this.from = from;
+			this.to = to;
+			this.results = results;
+		}
+		
+		protected void compute() {
+			if (to - from <= MIN_PARALLEL_BATCH) {
+				completionLists(root, allWords, prefixes, order, from, to, results);
+				return;
 			}
-			return list;
-			
-		} else if (!prefix.isEmpty() && ptr.firstChild != null) {
-			ptr = ptr.firstChild;
-			while (ptr != null) {
-				if (prefix.charAt(0) == allWords[ptr.substr.wordIndex].charAt(ptr.substr.startIndex)) {
-					String ptrWord = allWords[ptr.substr.wordIndex].substring(ptr.substr.startIndex, ptr.substr.endIndex+1);
-					int letterCount = 0;
-					for (int i = 0; i < ptrWord.length(); i++) {
-						if (i == prefix.length())
-							break;
-						else if (prefix.charAt(i) == ptrWord.charAt(i))
-							letterCount++;
-						else
-							break;
+			int mid = (from + to) >>> 1;
+			invokeAll(new BatchTask(root, allWords, prefixes, order, from, mid, results),
+					new BatchTask(root, allWords, prefixes, order, mid, to, results));
+		}
+	}
+	
+	private static ArrayList<ArrayList<TrieNode>> emptyResults(int size) {
+		ArrayList<ArrayList<TrieNode>> results = new ArrayList<ArrayList<TrieNode>>(size);
+		for (int i = 0; i < size; i++) {
+			results.add(null);
+		}
+		return results;
+	}
+	
+	/**
+	 * Returns the indexes of the prefixes in sorted order of the prefixes.
+	 */
+	private static int[] sortedOrder(final String[] prefixes) {
+		Integer[] order = new Integer[prefixes.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				return prefixes[i1].compareTo(prefixes[i2]);
+			}
+		});
+		int[] sorted = new int[order.length];
+		for (int i = 0; i < order.length; i++) {
+			sorted[i] = order[i];
+		}
+		return sorted;
+	}
+	
+	/**
+	 * Answers the prefixes order[from..to-1], which are in sorted order, in one pass.
+	 */
+	private static void completionLists(TrieNode root, String[] allWords, String[] prefixes,
+			int[] order, int from, int to, ArrayList<ArrayList<TrieNode>> results) {
+		Path path = new Path();
+		path.push(root);
+		String prev = "";
+		TrieNode prevNode = null;
+		ArrayList<TrieNode> prevList = null;
+		for (int i = from; i < to; i++) {
+			String prefix = prefixes[order[i]];
+			int common = 0;
+			int max = Math.min(prev.length(), prefix.length());
+			while (common < max && prev.charAt(common) == prefix.charAt(common)) {
+				common++;
+			}
+			// resume from the deepest node whose whole substring is in the common prefix
+			while (path.top > 1 && path.nodes[path.top-1].substr.endIndex+1 > common) {
+				path.top--;
+			}
+			TrieNode start = path.nodes[path.top-1];
+			int matched = start.substr == null ? 0 : start.substr.endIndex+1;
+			TrieNode ptr = locate(start, matched, allWords, prefix, path);
+			ArrayList<TrieNode> list = null;
+			if (ptr != null && ptr == prevNode) {
+				list = prevList == null ? null : new ArrayList<TrieNode>(prevList);
+			} else if (ptr != null) {
+				final ArrayList<TrieNode> found = new ArrayList<TrieNode>();
+				walk(ptr, new CompletionVisitor() {
+					public boolean visit(TrieNode leaf) {
+						found.add(leaf);
+						return true;
 					}
-					ArrayList<TrieNode> returnList = completionList(ptr, allWords, prefix.substring(letterCount));
-					if (returnList == null)
-						break; // no match found
-					else
-						list.addAll(completionList(ptr, allWords, prefix.substring(letterCount)));
+				});
+				list = found.isEmpty() ? null : found;
+			}
+			results.set(order[i], list);
+			prev = prefix;
+			prevNode = ptr;
+			prevList = list;
+		}
+	}
+	
+	/**
+	 * Returns an iterator over all the leaf nodes of a trie made by buildTrie, in sorted
+	 * order of their words. Leaves are found one at a time, as the iterator is advanced.
+	 * 
+	 * @param root Root of trie
+	 * @param allWords Array of words that have been inserted into the trie
+	 * @return Iterator over the leaf nodes
+	 */
+	public static Iterator<TrieNode> iterator(TrieNode root, String[] allWords) {
+		return new TrieIterator(root, allWords, null, true, null, null);
+	}
+	
+	/**
+	 * Returns an iterator over the leaf nodes of a trie made by buildTrie whose words are
+	 * in a range, in sorted order. The iterator starts at the first word in the range, and
+	 * finds the others as it is advanced.
+	 * 
+	 * @param root Root of trie
+	 * @param allWords Array of words that have been inserted into the trie
+	 * @param from Inclusive lower bound, or null for none
+	 * @param to Exclusive upper bound, or null for none
+	 * @return Iterator over the leaf nodes
+	 */
+	public static Iterator<TrieNode> range(TrieNode root, String[] allWords, String from, String to) {
+		return new TrieIterator(root, allWords, from, true, to, null);
+	}
+	
+	/**
+	 * Finds the leaf node of the smallest word that is greater than or equal to a key, in
+	 * a trie made by buildTrie.
+	 * 
+	 * @param root Root of trie
+	 * @param allWords Array of words that have been inserted into the trie
+	 * @param key Key
+	 * @return Leaf node, or null if all words are smaller than the key
+	 */
+	public static TrieNode ceiling(TrieNode root, String[] allWords, String key) {
+		TrieIterator it = new TrieIterator(root, allWords, key, true, null, null);
+		return it.hasNext() ? it.next() : null;
+	}
+	
+	/**
+	 * Finds the leaf node of the largest word that is less than or equal to a key, in a
+	 * trie made by buildTrie. Sibling lists only go forward, so the descent remembers the
+	 * last subtree seen that is all smaller than the key, and the largest leaf of that
+	 * subtree is the answer if no equal word is found.
+	 * 
+	 * @param root Root of trie
+	 * @param allWords Array of words that have been inserted into the trie
+	 * @param key Key
+	 * @return Leaf node, or null if all words are greater than the key
+	 */
+	public static TrieNode floor(TrieNode root, String[] allWords, String key) {
+		TrieNode smaller = null;
+		int d = 0; // characters of key matched by the path to the current children
+		TrieNode child = root.firstChild;
+		while (child != null) {
+			String word = allWords[child.substr.wordIndex];
+			int end = child.substr.endIndex;
+			int p = d;
+			while (p <= end && p < key.length() && word.charAt(p) == key.charAt(p)) {
+				p++;
+			}
+			if (p <= end && p < key.length()) {
+				if (word.charAt(p) > key.charAt(p))
+					break; // this subtree and the rest are all greater
+				smaller = child;
+				child = child.sibling;
+				continue;
+			}
+			if (child.firstChild == null) {
+				if (word.length() == key.length())
+					return child; // the key itself
+				if (p < key.length()) {
+					smaller = child; // the word is a proper prefix of key
+					child = child.sibling;
+					continue;
 				}
-				ptr = ptr.sibling;
+				break;
 			}
+			if (p == key.length())
+				break; // all the words below start with key, and are longer
+			d = end+1;
+			child = child.firstChild;
 		}
-
-		if (list.isEmpty())
+		if (smaller == null)
 			return null;
-		else
-			return list;
+		// largest leaf below smaller: its last child, all the way down
+		TrieNode node = smaller;
+		while (node.firstChild != null) {
+			node = node.firstChild;
+			while (node.sibling != null) {
+				node = node.sibling;
+			}
+		}
+		return node;
+	}
+	
+	/**
+	 * Returns one page of the completion list for a prefix, in sorted order, for a trie
+	 * made by buildTrie. Only the leaves on the page are visited: the walk starts right
+	 * after the cursor, so paging through a large completion list never walks or sorts the
+	 * whole of it. The word of the last leaf on a page is the cursor for the next page.
+	 * 
+	 * @param root Root of trie
+	 * @param allWords Array of words that have been inserted into the trie
+	 * @param prefix Prefix to be completed with words in trie
+	 * @param after Word after which the page starts, or null for the first page
+	 * @param pageSize Maximum number of leaf nodes on the page
+	 * @return Leaf nodes of the page, fewer than pageSize (possibly none) on the last page
+	 */
+	public static ArrayList<TrieNode> completionPage(TrieNode root, String[] allWords,
+			String prefix, String after, int pageSize) {
+		TrieIterator it = after == null || after.compareTo(prefix) < 0
+				? new TrieIterator(root, allWords, prefix, true, null, prefix)
+				: new TrieIterator(root, allWords, after, false, null, prefix);
+		ArrayList<TrieNode> page = new ArrayList<TrieNode>(Math.min(pageSize, 64));
+		while (page.size() < pageSize && it.hasNext()) {
+			page.add(it.next());
+		}
+		return page;
 	}
 	
 	public static void print(TrieNode root, String[] allWords) {
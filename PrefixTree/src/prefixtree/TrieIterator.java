@@ -0,0 +1,158 @@
+package prefixtree;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class iterates over the leaf nodes of a trie made by buildTrie in sorted order of
+ * their words, from a starting word on, finding each leaf only when it is asked for. The
+ * position is kept on a stack of nodes whose subtrees, and those of their later siblings,
+ * are still to be visited, as in PrefixTree.completions; at most one is pending per level.
+ *
+ * Iteration stops at the end of the trie, at an upper bound, or at the first word that no
+ * longer starts with a given prefix, whichever comes first.
+ *
+ */
+public class TrieIterator implements Iterator<TrieNode> {
+	
+	private final String[] allWords;
+	
+	/**
+	 * Exclusive upper bound, or null for none.
+	 */
+	private final String to;
+	
+	/**
+	 * Prefix that all words must start with, or null for none.
+	 */
+	private final String prefix;
+	
+	private TrieNode[] stack = new TrieNode[16];
+	
+	private int top;
+	
+	/**
+	 * Next leaf to return, or null at the end.
+	 */
+	private TrieNode next;
+	
+	/**
+	 * Initializes an iterator over the words from a lower bound on.
+	 *
+	 * @param root Root of trie
+	 * @param allWords Array of words that have been inserted into the trie
+	 * @param from Lower bound, or null to start at the first word
+	 * @param inclusive True if a word equal to from is included
+	 * @param to Exclusive upper bound, or null for none
+	 * @param prefix Prefix that all words must start with, or null for none
+	 */
+	TrieIterator(TrieNode root, String[] allWords, String from, boolean inclusive, String to, String prefix) {
+		this.allWords = allWords;
+		this.to = to;
+		this.prefix = prefix;
+		if (from == null) {
+			push(root.firstChild);
+		} else {
+			seek(root, from, inclusive);
+		}
+		advance();
+	}
+	
+	private void push(TrieNode node) {
+		if (node == null)
+			return;
+		if (top == stack.length)
+			stack = Arrays.copyOf(stack, top*2);
+		stack[top++] = node;
+	}
+	
+	/**
+	 * Fills the stack so that the first leaf it leads to holds the smallest word that is
+	 * greater than key (or equal to it, if inclusive).
+	 */
+	private void seek(TrieNode node, String key, boolean inclusive) {
+		int d = 0; // characters of key matched by the path to node
+		TrieNode child = node.firstChild;
+		while (child != null) {
+			String word = allWords[child.substr.wordIndex];
+			int end = child.substr.endIndex;
+			int p = d;
+			while (p <= end && p < key.length() && word.charAt(p) == key.charAt(p)) {
+				p++;
+			}
+			if (p <= end && p < key.length()) {
+				if (word.charAt(p) > key.charAt(p)) {
+					push(child); // this subtree and the rest are all greater
+					return;
+				}
+				child = child.sibling; // this subtree is all smaller
+				continue;
+			}
+			if (p < key.length() && child.firstChild == null) {
+				child = child.sibling; // the word is a proper prefix of key
+				continue;
+			}
+			if (p < key.length()) {
+				// key goes on below this child; its later siblings are all greater
+				push(child.sibling);
+				d = end+1;
+				child = child.firstChild;
+				continue;
+			}
+			// key ends within or at the end of this child, so all its words start with key
+			if (child.firstChild == null && word.length() == key.length() && !inclusive)
+				push(child.sibling);
+			else
+				push(child);
+			return;
+		}
+	}
+	
+	/**
+	 * Finds the next leaf, or sets next to null at the end.
+	 */
+	private void advance() {
+		next = null;
+		if (top == 0)
+			return;
+		TrieNode node = stack[--top];
+		while (node.firstChild != null) {
+			push(node.sibling);
+			node = node.firstChild;
+		}
+		push(node.sibling);
+		String word = allWords[node.substr.wordIndex];
+		if ((to != null && word.compareTo(to) >= 0) || (prefix != null && !word.startsWith(prefix))) {
+			top = 0; // past the end of the range
+			return;
+		}
+		next = node;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.util.Iterator#hasNext()
+	 */
+	public boolean hasNext() {
+		return next != null;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.util.Iterator#next()
+	 */
+	public TrieNode next() {
+		if (next == null) {
+			throw new NoSuchElementException();
+		}
+		TrieNode leaf = next;
+		advance();
+		return leaf;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.util.Iterator#remove()
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+}
@@ -0,0 +1,322 @@
+package prefixtree;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * This class implements a compressed trie keyed on the UTF-8 bytes of its words, for words
+ * in any script (CJK text, URLs, file paths) rather than lowercase English. It is laid out
+ * in flat arrays in breadth-first order like CompactTrie, but every branch is on one byte,
+ * so a node has at most 256 children whatever the alphabet.
+ *
+ * Child lookup adapts to the fan-out of each node, as in an adaptive radix tree: the
+ * children of a node with few of them are found by a scan of their sorted first bytes,
+ * while a node with many children (e.g. the lead bytes of CJK characters) gets a 256-way
+ * table that maps a byte straight to its child.
+ *
+ * The encoded words are kept in one byte array, and each node's substring is an offset
+ * and a length into it, all ints, so there is no limit on word length.
+ *
+ * Words are sorted in code point order, which is the order of their UTF-8 bytes. This only
+ * differs from String order for characters outside the Basic Multilingual Plane.
+ *
+ */
+public class Utf8Trie {
+	
+	/**
+	 * Fan-out above which a node gets a 256-way child table.
+	 */
+	static final int WIDE_FANOUT = 16;
+	
+	/**
+	 * UTF-8 bytes of all words, sorted and without duplicates, one after the other.
+	 */
+	final byte[] bytes;
+	
+	/**
+	 * Word i is bytes[wordStart[i]] to bytes[wordStart[i+1]-1].
+	 */
+	final int[] wordStart;
+	
+	/**
+	 * Number of nodes, node 0 being the root.
+	 */
+	final int numNodes;
+	
+	/**
+	 * Children of node n are the nodes childStart[n] to childStart[n+1]-1.
+	 */
+	final int[] childStart;
+	
+	/**
+	 * First byte of the substring held at each node.
+	 */
+	final byte[] firstByte;
+	
+	/**
+	 * Offset of each node's substring in bytes.
+	 */
+	final int[] labelOffset;
+	
+	/**
+	 * Number of bytes from the root to the start of each node's substring.
+	 */
+	final int[] labelStart;
+	
+	/**
+	 * Length of each node's substring, in bytes.
+	 */
+	final int[] labelLength;
+	
+	/**
+	 * The words below node n (including one that ends at n) are words wordsFrom[n] to
+	 * wordsTo[n]-1.
+	 */
+	final int[] wordsFrom, wordsTo;
+	
+	/**
+	 * Start of the 256-way child table of each node in tables, or -1 if it has none.
+	 */
+	final int[] table;
+	
+	/**
+	 * 256-way child tables, one after the other; -1 for no child.
+	 */
+	final int[] tables;
+	
+	/**
+	 * Builds a trie of all words in the input array. The array is not modified.
+	 *
+	 * @param allWords Input array of words to be inserted
+	 */
+	public Utf8Trie(String[] allWords) {
+		byte[][] encoded = new byte[allWords.length][];
+		for (int i = 0; i < allWords.length; i++) {
+			encoded[i] = allWords[i].getBytes(StandardCharsets.UTF_8);
+		}
+		Arrays.sort(encoded, new Comparator<byte[]>() {
+			public int compare(byte[] b1, byte[] b2) {
+				return Utf8Trie.compare(b1, b2);
+			}
+		});
+		int n = 0;
+		long total = 0;
+		for (int i = 0; i < encoded.length; i++) {
+			if (n == 0 || compare(encoded[i], encoded[n-1]) != 0) {
+				encoded[n++] = encoded[i];
+				total += encoded[i].length;
+			}
+		}
+		if (total > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("words too long in total: " + total + " bytes");
+		}
+		bytes = new byte[(int) total];
+		wordStart = new int[n+1];
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(encoded[i], 0, bytes, wordStart[i], encoded[i].length);
+			wordStart[i+1] = wordStart[i] + encoded[i].length;
+		}
+		
+		// each node other than the root adds a word or a branch, so there are at most 2n+1
+		int max = 2*n + 1;
+		int[] childStart = new int[max+1];
+		byte[] firstByte = new byte[max];
+		int[] labelOffset = new int[max], labelStart = new int[max], labelLength = new int[max];
+		int[] wordsFrom = new int[max], wordsTo = new int[max];
+		int[] table = new int[max];
+		int[] tables = new int[256];
+		int tablesSize = 0;
+		wordsTo[0] = n;
+		int next = 1;
+		// nodes are created in breadth-first order, as in CompactTrie
+		for (int node = 0; node < next; node++) {
+			childStart[node] = next;
+			int depth = labelStart[node] + labelLength[node];
+			int lo = wordsFrom[node], hi = wordsTo[node];
+			if (lo < hi && length(lo) == depth)
+				lo++; // word ending at this node
+			while (lo < hi) {
+				byte b = byteAt(lo, depth);
+				int end = lo+1;
+				while (end < hi && byteAt(end, depth) == b) {
+					end++;
+				}
+				// the words of a sorted range share the prefix of its first and last words
+				int common = depth+1;
+				while (common < length(lo) && common < length(end-1)
+						&& byteAt(lo, common) == byteAt(end-1, common)) {
+					common++;
+				}
+				firstByte[next] = b;
+				labelOffset[next] = wordStart[lo] + depth;
+				labelStart[next] = depth;
+				labelLength[next] = common - depth;
+				wordsFrom[next] = lo;
+				wordsTo[next] = end;
+				next++;
+				lo = end;
+			}
+			if (next - childStart[node] > WIDE_FANOUT) {
+				if (tablesSize + 256 > tables.length)
+					tables = Arrays.copyOf(tables, tables.length*2);
+				table[node] = tablesSize;
+				Arrays.fill(tables, tablesSize, tablesSize + 256, -1);
+				for (int child = childStart[node]; child < next; child++) {
+					tables[tablesSize + (firstByte[child] & 0xff)] = child;
+				}
+				tablesSize += 256;
+			} else {
+				table[node] = -1;
+			}
+		}
+		childStart[next] = next;
+		
+		numNodes = next;
+		this.childStart = Arrays.copyOf(childStart, next+1);
+		this.firstByte = Arrays.copyOf(firstByte, next);
+		this.labelOffset = Arrays.copyOf(labelOffset, next);
+		this.labelStart = Arrays.copyOf(labelStart, next);
+		this.labelLength = Arrays.copyOf(labelLength, next);
+		this.wordsFrom = Arrays.copyOf(wordsFrom, next);
+		this.wordsTo = Arrays.copyOf(wordsTo, next);
+		this.table = Arrays.copyOf(table, next);
+		this.tables = Arrays.copyOf(tables, tablesSize);
+	}
+	
+	/**
+	 * Compares two byte strings as unsigned bytes.
+	 */
+	static int compare(byte[] b1, byte[] b2) {
+		int len = Math.min(b1.length, b2.length);
+		for (int i = 0; i < len; i++) {
+			int diff = (b1[i] & 0xff) - (b2[i] & 0xff);
+			if (diff != 0)
+				return diff;
+		}
+		return b1.length - b2.length;
+	}
+	
+	private int length(int word) {
+		return wordStart[word+1] - wordStart[word];
+	}
+	
+	private byte byteAt(int word, int i) {
+		return bytes[wordStart[word] + i];
+	}
+	
+	/**
+	 * Finds the child of a node whose substring starts with the given byte.
+	 *
+	 * @param node Parent node
+	 * @param b First byte of the child's substring
+	 * @return Child node, or -1 if there is none
+	 */
+	int child(int node, byte b) {
+		if (table[node] >= 0)
+			return tables[table[node] + (b & 0xff)];
+		int key = b & 0xff;
+		for (int child = childStart[node]; child < childStart[node+1]; child++) {
+			int first = firstByte[child] & 0xff;
+			if (first >= key)
+				return first == key ? child : -1;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Finds the node at which a prefix ends, that is, the highest node all of whose words
+	 * start with the prefix. The prefix may end inside the node's substring.
+	 *
+	 * @param prefix UTF-8 bytes of the prefix
+	 * @return Node, or -1 if no word starts with the prefix
+	 */
+	int locate(byte[] prefix) {
+		int node = 0;
+		int d = 0;
+		while (d < prefix.length) {
+			int child = child(node, prefix[d]);
+			if (child < 0)
+				return -1;
+			int offset = labelOffset[child] - labelStart[child];
+			int end = Math.min(labelStart[child] + labelLength[child], prefix.length);
+			for (d++; d < end; d++) {
+				if (bytes[offset + d] != prefix[d])
+					return -1;
+			}
+			node = child;
+		}
+		return node;
+	}
+	
+	/**
+	 * Returns the word at an index.
+	 *
+	 * @param word Index of the word
+	 * @return Word, decoded from its UTF-8 bytes
+	 */
+	String word(int word) {
+		return new String(bytes, wordStart[word], length(word), StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Returns the "completion list" for a prefix, i.e. all the words in the trie that start
+	 * with the prefix, in code point order. The prefix may be an entire word.
+	 *
+	 * @param prefix Prefix to be completed with words in trie
+	 * @return List of all words that start with the prefix, or null if there are none
+	 */
+	public ArrayList<String> completionList(String prefix) {
+		int node = locate(prefix.getBytes(StandardCharsets.UTF_8));
+		if (node < 0 || wordsFrom[node] == wordsTo[node])
+			return null;
+		ArrayList<String> list = new ArrayList<String>(wordsTo[node] - wordsFrom[node]);
+		for (int i = wordsFrom[node]; i < wordsTo[node]; i++) {
+			list.add(word(i));
+		}
+		return list;
+	}
+	
+	/**
+	 * Returns the number of words that start with a prefix, without listing them.
+	 *
+	 * @param prefix Prefix
+	 * @return Number of completions
+	 */
+	public int completionCount(String prefix) {
+		int node = locate(prefix.getBytes(StandardCharsets.UTF_8));
+		return node < 0 ? 0 : wordsTo[node] - wordsFrom[node];
+	}
+	
+	/**
+	 * Tells if a word is in the trie.
+	 *
+	 * @param word Word
+	 * @return True if the word was inserted
+	 */
+	public boolean contains(String word) {
+		byte[] key = word.getBytes(StandardCharsets.UTF_8);
+		int node = locate(key);
+		return node >= 0 && labelStart[node] + labelLength[node] == key.length
+				&& wordsFrom[node] < wordsTo[node] && length(wordsFrom[node]) == key.length;
+	}
+	
+	/**
+	 * Returns the number of words in the trie.
+	 *
+	 * @return Word count
+	 */
+	public int size() {
+		return wordStart.length-1;
+	}
+	
+	/**
+	 * Returns the number of nodes in the trie, including the root.
+	 *
+	 * @return Node count
+	 */
+	public int nodeCount() {
+		return numNodes;
+	}
+}
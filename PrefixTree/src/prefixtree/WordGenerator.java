@@ -0,0 +1,150 @@
+package prefixtree;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * This class generates a large dictionary of English-like words for benchmarking tries.
+ * What matters to a trie is how words share prefixes, so words are not random strings:
+ * they are made of syllables (onset, vowel, coda) drawn with skewed frequencies, so that
+ * some first letters and stems are far more common than others, and a stem often comes in
+ * several forms ("lanter", "lanters", "lantering"), as inflected words do.
+ *
+ * The dictionary is written in the format PrefixTreeApp reads: the number of words on the
+ * first line, then one word per line.
+ *
+ */
+public class WordGenerator {
+	
+	private static final String[] ONSETS = {
+		"s", "t", "p", "c", "m", "b", "d", "r", "f", "h", "l", "g", "w", "n",
+		"st", "pr", "tr", "ch", "sh", "th", "br", "cl", "gr", "sp", "fl", "bl", "k", "v", "j", "qu"
+	};
+	
+	private static final String[] VOWELS = {
+		"a", "e", "i", "o", "u", "ea", "ou", "ai", "y", "oo", "ie"
+	};
+	
+	private static final String[] CODAS = {
+		"", "", "", "n", "r", "t", "l", "s", "nd", "st", "ck", "m", "nt", "ng", "rt", "x"
+	};
+	
+	private static final String[] SUFFIXES = {
+		"s", "ed", "ing", "er", "ly", "ness", "tion", "able", "ment", "est"
+	};
+	
+	private Random random;
+	
+	/**
+	 * Initializes a generator.
+	 *
+	 * @param seed Random seed, so that runs are repeatable
+	 */
+	public WordGenerator(long seed) {
+		random = new Random(seed);
+	}
+	
+	/**
+	 * Picks an element, favoring the first ones: the first tenth of the elements is picked
+	 * about 40% of the time.
+	 */
+	private String pick(String[] choices) {
+		return choices[(int) (choices.length * Math.pow(random.nextDouble(), 2.5))];
+	}
+	
+	/**
+	 * Makes a stem of one to four syllables, mostly two or three.
+	 */
+	private String stem() {
+		int syllables = 1 + random.nextInt(2) + random.nextInt(3) / 2 + random.nextInt(2);
+		StringBuilder sb = new StringBuilder();
+		for (int s = 0; s < syllables; s++) {
+			if (s == 0 || random.nextInt(3) > 0)
+				sb.append(pick(ONSETS));
+			sb.append(pick(VOWELS));
+			sb.append(pick(CODAS));
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Makes a word: a stem, possibly with a suffix.
+	 *
+	 * @return Word, in lower case
+	 */
+	public String nextWord() {
+		String stem = stem();
+		return random.nextInt(3) == 0 ? stem + pick(SUFFIXES) : stem;
+	}
+	
+	/**
+	 * Makes a dictionary of distinct words, in the order they were made. Each new stem is
+	 * also added in a few inflected forms, so many words are prefixes of other words;
+	 * PrefixTree does not keep those.
+	 *
+	 * @param numWords Number of words
+	 * @return Words, in lower case
+	 */
+	public String[] dictionary(int numWords) {
+		String[] words = new String[numWords];
+		HashSet<String> seen = new HashSet<String>(numWords * 2);
+		int n = 0;
+		while (n < numWords) {
+			String stem = stem();
+			if (!seen.add(stem))
+				continue;
+			words[n++] = stem;
+			int forms = random.nextInt(4);
+			for (int f = 0; f < forms && n < numWords; f++) {
+				String word = stem + pick(SUFFIXES);
+				if (seen.add(word))
+					words[n++] = word;
+			}
+		}
+		return words;
+	}
+	
+	/**
+	 * Makes weights for a dictionary, with a Zipf distribution over a random ranking of the
+	 * words: the word of rank r weighs about numWords/(r+1).
+	 *
+	 * @param numWords Number of words
+	 * @return Weights
+	 */
+	public long[] weights(int numWords) {
+		long[] weights = new long[numWords];
+		for (int i = 0; i < numWords; i++) {
+			weights[i] = numWords / (i+1);
+		}
+		for (int i = numWords-1; i > 0; i--) {
+			int j = random.nextInt(i+1);
+			long w = weights[i];
+			weights[i] = weights[j];
+			weights[j] = w;
+		}
+		return weights;
+	}
+	
+	/**
+	 * Writes a dictionary from the command line: WordGenerator file numWords [seed]
+	 */
+	public static void main(String[] args)
+	throws FileNotFoundException {
+		if (args.length < 2) {
+			System.out.println("usage: WordGenerator file numWords [seed]");
+			return;
+		}
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+		String[] words = new WordGenerator(seed).dictionary(Integer.parseInt(args[1]));
+		PrintWriter pw = new PrintWriter(new File(args[0]));
+		pw.println(words.length);
+		for (String word: words) {
+			pw.println(word);
+		}
+		pw.close();
+		System.out.println("wrote " + words.length + " words to " + args[0]);
+	}
+}
@@ -0,0 +1,197 @@
+package se;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+ * This class generates a synthetic corpus for benchmarking the search engine. Words are
+ * drawn from a vocabulary with a Zipf distribution (the word of rank r has probability
+ * proportional to 1/r^s), as in natural text. If a noise words file is given, the noise
+ * words take the top ranks, as articles and prepositions do in English. Some words are
+ * capitalized or followed by punctuation, so that getKeyword has real work to do.
+ *
+ * The corpus is written as a directory of document files plus a docs file that lists
+ * them, the same layout makeIndex reads.
+ *
+ */
+public class CorpusGenerator {
+	
+	/**
+	 * Vocabulary, in rank order.
+	 */
+	private String[] vocabulary;
+	
+	/**
+	 * Cumulative probability of each rank.
+	 */
+	private double[] cdf;
+	
+	private Random random;
+	
+	private static final String[] SYLLABLES = {
+		"ka", "lo", "mi", "ne", "ru", "sa", "te", "vo", "zi", "pa",
+		"dor", "fen", "gil", "har", "jun", "lem", "mor", "nix", "quel", "tur"
+	};
+	
+	private static final char[] PUNCTUATION = { '.', ',', '?', ':', ';', '!' };
+	
+	/**
+	 * Initializes a generator.
+	 *
+	 * @param vocabularySize Number of distinct words
+	 * @param exponent Zipf exponent s, about 1.0 for English text
+	 * @param noiseWords Words to place at the top ranks, may be empty
+	 * @param seed Random seed, so that runs are repeatable
+	 */
+	public CorpusGenerator(int vocabularySize, double exponent, ArrayList<String> noiseWords, long seed) {
+		if (vocabularySize < 1) {
+			throw new IllegalArgumentException("vocabularySize must be at least 1");
+		}
+		random = new Random(seed);
+		vocabulary = new String[vocabularySize];
+		for (int r = 0; r < vocabularySize; r++) {
+			vocabulary[r] = r < noiseWords.size() ? noiseWords.get(r) : syntheticWord(r);
+		}
+		cdf = new double[vocabularySize];
+		double sum = 0;
+		for (int r = 0; r < vocabularySize; r++) {
+			sum += 1.0 / Math.pow(r+1, exponent);
+			cdf[r] = sum;
+		}
+		for (int r = 0; r < vocabularySize; r++) {
+			cdf[r] /= sum;
+		}
+	}
+	
+	/**
+	 * Makes a distinct word for a rank by spelling the rank in base SYLLABLES.length.
+	 */
+	private static String syntheticWord(int rank) {
+		StringBuilder sb = new StringBuilder();
+		int n = rank;
+		do {
+			sb.append(SYLLABLES[n % SYLLABLES.length]);
+			n /= SYLLABLES.length;
+		} while (n > 0);
+		return sb.toString();
+	}
+	
+	/**
+	 * Draws a word from the Zipf distribution.
+	 *
+	 * @return Word
+	 */
+	public String nextWord() {
+		double u = random.nextDouble();
+		int left = 0, right = cdf.length-1;
+		while (left < right) {
+			int mid = (left + right) / 2;
+			if (cdf[mid] < u)
+				left = mid+1;
+			else
+				right = mid;
+		}
+		return vocabulary[left];
+	}
+	
+	/**
+	 * Writes one document of the given number of words.
+	 *
+	 * @param file Document file
+	 * @param numWords Number of words in the document
+	 * @throws FileNotFoundException If the file cannot be created
+	 */
+	public void writeDocument(File file, int numWords)
+	throws FileNotFoundException {
+		PrintWriter pw = new PrintWriter(file);
+		for (int i = 0; i < numWords; i++) {
+			String word = nextWord();
+			int style = random.nextInt(20);
+			if (style == 0)
+				word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+			pw.print(word);
+			if (style == 1)
+				pw.print(PUNCTUATION[random.nextInt(PUNCTUATION.length)]);
+			pw.print((i+1) % 12 == 0 ? '\n' : ' ');
+		}
+		pw.close();
+	}
+	
+	/**
+	 * Writes a corpus into a directory.
+	 *
+	 * @param dir Directory for the corpus, created if needed
+	 * @param numDocs Number of documents
+	 * @param wordsPerDoc Average number of words per document; actual sizes vary by up to 50%
+	 * @return The docs file, listing the paths of all documents
+	 * @throws IOException If a file cannot be written
+	 */
+	public File writeCorpus(File dir, int numDocs, int wordsPerDoc)
+	throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("cannot create " + dir);
+		}
+		File docsFile = new File(dir, "docs.txt");
+		PrintWriter docs = new PrintWriter(docsFile);
+		for (int d = 0; d < numDocs; d++) {
+			File doc = new File(dir, "doc" + d + ".txt");
+			int size = wordsPerDoc / 2 + random.nextInt(wordsPerDoc + 1);
+			writeDocument(doc, size);
+			docs.println(doc.getPath());
+		}
+		docs.close();
+		return docsFile;
+	}
+	
+	/**
+	 * Returns the word of the given rank.
+	 *
+	 * @param rank Rank, 0 being the most frequent word
+	 * @return Word
+	 */
+	public String word(int rank) {
+		return vocabulary[rank];
+	}
+	
+	/**
+	 * Reads a noise words file into a list.
+	 *
+	 * @param noiseWordsFile Name of file that has a list of noise words, one noise word per line
+	 * @return Noise words
+	 * @throws FileNotFoundException If the file is not found on disk
+	 */
+	public static ArrayList<String> readNoiseWords(String noiseWordsFile)
+	throws FileNotFoundException {
+		ArrayList<String> words = new ArrayList<String>();
+		Scanner sc = new Scanner(new File(noiseWordsFile));
+		while (sc.hasNext()) {
+			words.add(sc.next());
+		}
+		sc.close();
+		return words;
+	}
+	
+	/**
+	 * Writes a corpus from the command line:
+	 * CorpusGenerator dir numDocs wordsPerDoc [vocabularySize [exponent [noiseWordsFile]]]
+	 */
+	public static void main(String[] args)
+	throws IOException {
+		if (args.length < 3) {
+			System.out.println("usage: CorpusGenerator dir numDocs wordsPerDoc "
+					+ "[vocabularySize [exponent [noiseWordsFile]]]");
+			return;
+		}
+		int vocabularySize = args.length > 3 ? Integer.parseInt(args[3]) : 50000;
+		double exponent = args.length > 4 ? Double.parseDouble(args[4]) : 1.0;
+		ArrayList<String> noise = args.length > 5 ? readNoiseWords(args[5]) : new ArrayList<String>();
+		CorpusGenerator gen = new CorpusGenerator(vocabularySize, exponent, noise, 42);
+		File docs = gen.writeCorpus(new File(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+		System.out.println("wrote " + docs);
+	}
+}
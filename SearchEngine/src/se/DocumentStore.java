@@ -0,0 +1,280 @@
+package se;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is a forward index of documents: for each indexed document file, it keeps the
+ * byte offset and length of every keyword occurrence, as found while the document was
+ * scanned. A snippet showing where search keywords occur is then made by mapping just the
+ * relevant window of the file into memory, with no rescanning.
+ *
+ * Offsets are UTF-8 byte offsets, so documents must be UTF-8 (or ASCII) files. Documents
+ * indexed from streams have no file to read back, and are not stored.
+ *
+ */
+public class DocumentStore {
+	
+	/**
+	 * The keyword offsets of one document.
+	 */
+	public static class Entry {
+		
+		/**
+		 * Path of the document file.
+		 */
+		final String path;
+		
+		/**
+		 * For each keyword, (offset, length) pairs in increasing order of offset. Only the
+		 * first sizes.get(keyword) ints are used.
+		 */
+		final HashMap<String,int[]> offsets = new HashMap<String,int[]>();
+		
+		final HashMap<String,Integer> sizes = new HashMap<String,Integer>();
+		
+		Entry(String path) {
+			this.path = path;
+		}
+		
+		/**
+		 * Records an occurrence of a keyword.
+		 *
+		 * @param keyword Keyword, as indexed
+		 * @param offset Byte offset of the occurrence in the document
+		 * @param length Length of the occurrence in bytes
+		 */
+		void add(String keyword, int offset, int length) {
+			int[] pairs = offsets.get(keyword);
+			int size = pairs == null ? 0 : sizes.get(keyword);
+			if (pairs == null || size == pairs.length) {
+				pairs = pairs == null ? new int[4] : Arrays.copyOf(pairs, pairs.length*2);
+				offsets.put(keyword, pairs);
+			}
+			pairs[size] = offset;
+			pairs[size+1] = length;
+			sizes.put(keyword, size+2);
+		}
+		
+		/**
+		 * Trims the offset arrays once the document has been scanned.
+		 */
+		void trim() {
+			for (String keyword: sizes.keySet()) {
+				int size = sizes.get(keyword);
+				int[] pairs = offsets.get(keyword);
+				if (pairs.length != size)
+					offsets.put(keyword, Arrays.copyOf(pairs, size));
+			}
+			sizes.clear();
+		}
+	}
+	
+	/**
+	 * Entries by document name.
+	 */
+	private final ConcurrentHashMap<String,Entry> entries = new ConcurrentHashMap<String,Entry>();
+	
+	/**
+	 * Number of bytes shown on each side of the keywords in a snippet.
+	 */
+	private int context;
+	
+	/**
+	 * Strings put around each keyword occurrence in a snippet.
+	 */
+	private String highlightStart, highlightEnd;
+	
+	/**
+	 * Initializes an empty store that makes snippets with 60 bytes of context on each side,
+	 * and highlights keywords with square brackets.
+	 */
+	public DocumentStore() {
+		this(60, "[", "]");
+	}
+	
+	/**
+	 * Initializes an empty store.
+	 *
+	 * @param context Number of bytes shown on each side of the keywords in a snippet
+	 * @param highlightStart String put before each keyword occurrence, e.g. "<b>"
+	 * @param highlightEnd String put after each keyword occurrence, e.g. "</b>"
+	 */
+	public DocumentStore(int context, String highlightStart, String highlightEnd) {
+		this.context = context;
+		this.highlightStart = highlightStart;
+		this.highlightEnd = highlightEnd;
+	}
+	
+	/**
+	 * Creates the entry for a document that is about to be scanned. The entry is not
+	 * visible until it is passed to put.
+	 *
+	 * @param path Path of the document file
+	 * @return New entry
+	 */
+	Entry newEntry(String path) {
+		return new Entry(path);
+	}
+	
+	/**
+	 * Publishes the entry of a scanned document, replacing any earlier one.
+	 *
+	 * @param docName Document name
+	 * @param entry Entry filled in while the document was scanned
+	 */
+	void put(String docName, Entry entry) {
+		entry.trim();
+		entries.put(docName, entry);
+	}
+	
+	/**
+	 * Forgets a document.
+	 *
+	 * @param docName Document name
+	 */
+	void remove(String docName) {
+		entries.remove(docName);
+	}
+	
+	/**
+	 * Returns the number of stored documents.
+	 *
+	 * @return Document count
+	 */
+	public int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * Makes a snippet of a document around the place where the given keywords occur most
+	 * densely. Every occurrence of either keyword in the snippet is highlighted. The snippet
+	 * starts and ends at whitespace, and is marked with "..." where it cuts the document.
+	 *
+	 * @param docName Document name
+	 * @param kw1 First keyword, as indexed (lower case, stemmed if stemming is on)
+	 * @param kw2 Second keyword, as indexed
+	 * @return Snippet, or null if the document is not stored or contains neither keyword
+	 * @throws IOException If the document file cannot be read
+	 */
+	public String snippet(String docName, String kw1, String kw2)
+	throws IOException {
+		Entry entry = entries.get(docName);
+		if (entry == null)
+			return null;
+		int[] hits = mergeOffsets(entry.offsets.get(kw1), entry.offsets.get(kw2));
+		if (hits.length == 0)
+			return null;
+		
+		// slide a window of 2*context bytes over the hits, keep the one covering the most
+		int bestFirst = 0, bestLast = 0;
+		for (int first = 0, last = 0; first < hits.length; first += 2) {
+			if (last < first)
+				last = first;
+			while (last+2 < hits.length && hits[last+2] + hits[last+3] - hits[first] <= 2*context) {
+				last += 2;
+			}
+			if (last - first > bestLast - bestFirst) {
+				bestFirst = first;
+				bestLast = last;
+			}
+		}
+		int hitsStart = hits[bestFirst];
+		int hitsEnd = hits[bestLast] + hits[bestLast+1];
+		int slack = Math.max(0, 2*context - (hitsEnd - hitsStart)) / 2;
+		
+		FileChannel ch = FileChannel.open(new File(entry.path).toPath(), StandardOpenOption.READ);
+		try {
+			long fileSize = ch.size();
+			if (hitsEnd > fileSize) // the file has been changed since it was indexed
+				return null;
+			long from = Math.max(0, hitsStart - slack);
+			long to = Math.min(fileSize, (long) hitsEnd + slack);
+			MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+			byte[] bytes = new byte[(int) (to - from)];
+			buf.get(bytes);
+			return highlight(bytes, (int) from, hits, bestFirst, bestLast, from > 0, to < fileSize);
+		} finally {
+			ch.close();
+		}
+	}
+	
+	/**
+	 * Builds the snippet text from the mapped bytes, trimming partial words at the edges
+	 * and highlighting hits[first..last].
+	 */
+	private String highlight(byte[] bytes, int base, int[] hits, int first, int last,
+			boolean cutStart, boolean cutEnd) {
+		int start = 0, end = bytes.length;
+		if (cutStart) {
+			while (start < hits[first] - base && !isSpace(bytes[start]))
+				start++;
+		}
+		if (cutEnd) {
+			int hitsEnd = hits[last] + hits[last+1] - base;
+			while (end > hitsEnd && !isSpace(bytes[end-1]))
+				end--;
+		}
+		// whitespace is collapsed in the document text only, before the markers go in
+		StringBuilder sb = new StringBuilder();
+		if (cutStart)
+			sb.append("...");
+		int pos = start;
+		for (int h = first; h <= last; h += 2) {
+			int hs = hits[h] - base, he = hs + hits[h+1];
+			String before = text(bytes, pos, hs);
+			if (h == first && !cutStart)
+				before = before.replaceAll("^\\s+", "");
+			sb.append(before);
+			sb.append(highlightStart).append(text(bytes, hs, he)).append(highlightEnd);
+			pos = he;
+		}
+		String after = text(bytes, pos, end);
+		if (!cutEnd)
+			after = after.replaceAll("\\s+$", "");
+		sb.append(after);
+		if (cutEnd)
+			sb.append("...");
+		return sb.toString();
+	}
+	
+	/**
+	 * Decodes document bytes, with each run of whitespace collapsed to one space.
+	 */
+	private static String text(byte[] bytes, int from, int to) {
+		return new String(bytes, from, to - from, StandardCharsets.UTF_8).replaceAll("\\s+", " ");
+	}
+	
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+	}
+	
+	/**
+	 * Merges two (offset, length) pair lists into one in increasing order of offset.
+	 */
+	private static int[] mergeOffsets(int[] a, int[] b) {
+		if (a == null)
+			a = new int[0];
+		if (b == null || b == a)
+			b = new int[0];
+		int[] merged = new int[a.length + b.length];
+		int i = 0, j = 0, k = 0;
+		while (i < a.length || j < b.length) {
+			if (j >= b.length || (i < a.length && a[i] <= b[j])) {
+				merged[k++] = a[i++];
+				merged[k++] = a[i++];
+			} else {
+				merged[k++] = b[j++];
+				merged[k++] = b[j++];
+			}
+		}
+		return merged;
+	}
+}
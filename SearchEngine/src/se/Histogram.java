@@ -0,0 +1,135 @@
+package se;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * This class implements a lock-free histogram of non-negative long values, with buckets
+ * laid out as in HdrHistogram: values below 16 have a bucket each, and every power of two
+ * above that is split into 8 linear sub-buckets, so that any recorded value is known to
+ * within 12.5%. Recording a value costs a few shifts, one atomic increment of its bucket,
+ * two LongAdder additions for the count and sum, which spread over per-thread cells when
+ * threads contend, and a LongAccumulator update for the maximum, which writes only when
+ * the maximum grows. The buckets take a fixed 4K of memory whatever the range of values.
+ *
+ */
+public class Histogram {
+	
+	/**
+	 * Number of bits of a value that select its sub-bucket.
+	 */
+	private static final int SUB_BITS = 4;
+	
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	
+	private static final int HALF_SUB_COUNT = SUB_COUNT / 2;
+	
+	/**
+	 * Number of buckets needed to cover all non-negative longs.
+	 */
+	private static final int NUM_BUCKETS = SUB_COUNT + (64 - SUB_BITS) * HALF_SUB_COUNT;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+	
+	private final LongAdder count = new LongAdder();
+	
+	private final LongAdder sum = new LongAdder();
+	
+	private final LongAccumulator max = new LongAccumulator(new LongBinaryOperator() {
+		public long applyAsLong(long m, long value) {
+			return Math.max(m, value);
+		}
+	}, 0);
+	
+	/**
+	 * Records a value.
+	 *
+	 * @param value Value to record, negative values are recorded as 0
+	 */
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		counts.incrementAndGet(bucketOf(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+	
+	/**
+	 * Returns the number of recorded values.
+	 *
+	 * @return Count
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+	
+	/**
+	 * Returns the sum of all recorded values.
+	 *
+	 * @return Sum
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+	
+	/**
+	 * Returns the largest recorded value.
+	 *
+	 * @return Maximum, 0 if nothing was recorded
+	 */
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * Returns the value below which the given percentage of recorded values fall, rounded up
+	 * to the top of its bucket (but no higher than the maximum).
+	 *
+	 * @param percentile Percentage, between 0 and 100
+	 * @return Value at the percentile, 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] snapshot = new long[NUM_BUCKETS];
+		long total = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0)
+			return 0;
+		long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= target)
+				return Math.min(highestValueIn(i), getMax());
+		}
+		return getMax();
+	}
+	
+	/**
+	 * Returns the bucket of a non-negative value.
+	 */
+	static int bucketOf(long value) {
+		if (value < SUB_COUNT)
+			return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+		int sub = (int) (value >>> shift); // in HALF_SUB_COUNT..SUB_COUNT-1
+		return SUB_COUNT + (shift - 1) * HALF_SUB_COUNT + (sub - HALF_SUB_COUNT);
+	}
+	
+	/**
+	 * Returns the largest value that falls in a bucket.
+	 */
+	static long highestValueIn(int bucket) {
+		if (bucket < SUB_COUNT)
+			return bucket;
+		int shift = (bucket - SUB_COUNT) / HALF_SUB_COUNT + 1;
+		long sub = (bucket - SUB_COUNT) % HALF_SUB_COUNT + HALF_SUB_COUNT;
+		long high = ((sub + 1) << shift) - 1;
+		return high < 0 ? Long.MAX_VALUE : high;
+	}
+}
@@ -0,0 +1,334 @@
+package se;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This class scans a document for keywords, following the same rules as
+ * SearchEngine.getKeyword, but without creating a String per word. Characters are read
+ * into a reusable buffer, each whitespace-delimited word is stripped, checked and lower
+ * cased in place, noise words are rejected by a NoiseWordTrie, and keyword frequencies
+ * are counted in an open-addressing table that is probed with the buffer contents. A
+ * String is only created the first time a keyword is seen in a document.
+ *
+ * Optionally, keywords are reduced to their Porter stems before they are counted, and
+ * the byte offset of every keyword occurrence is recorded for a DocumentStore.
+ *
+ * An instance reuses its buffers between documents and must not be shared between threads.
+ *
+ */
+public class KeywordExtractor {
+	
+	/**
+	 * Noise words to reject.
+	 */
+	final NoiseWordTrie noiseWords;
+	
+	/**
+	 * Stemmer, or null if keywords are not stemmed.
+	 */
+	final PorterStemmer stemmer;
+	
+	/**
+	 * Buffer for characters read from the document.
+	 */
+	private final char[] readBuf = new char[8192];
+	
+	/**
+	 * Buffer for bytes read from a document stream, and the number of bytes each char of
+	 * readBuf was decoded from.
+	 */
+	private final byte[] byteBuf = new byte[8192];
+	
+	private final int[] charBytes = new int[8192];
+	
+	/**
+	 * Decoder for document streams, which reports malformed input instead of replacing it.
+	 */
+	private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+	
+	/**
+	 * Buffer holding the current word.
+	 */
+	private char[] word = new char[64];
+	
+	/**
+	 * Keywords seen in the current document, null in empty slots.
+	 */
+	private String[] terms = new String[256];
+	
+	/**
+	 * Hash of each keyword in terms.
+	 */
+	private int[] hashes = new int[256];
+	
+	/**
+	 * Frequency of each keyword in terms.
+	 */
+	private int[] counts = new int[256];
+	
+	/**
+	 * Number of keywords in terms.
+	 */
+	private int numTerms;
+	
+	/**
+	 * Receives keyword offsets for the current document, null if offsets are not recorded.
+	 */
+	private DocumentStore.Entry offsets;
+	
+	/**
+	 * Length of the word being read, document bytes read so far, and the byte offset of
+	 * the word, kept between chunks of the document.
+	 */
+	private int len, bytePos, wordStart;
+	
+	/**
+	 * Initializes an extractor.
+	 *
+	 * @param noiseWords Noise words to reject
+	 * @param stem Whether keywords are reduced to their Porter stems
+	 */
+	public KeywordExtractor(NoiseWordTrie noiseWords, boolean stem) {
+		this.noiseWords = noiseWords;
+		this.stemmer = stem ? new PorterStemmer() : null;
+	}
+	
+	/**
+	 * Scans a document and returns its keywords, each with an Occurrence holding its
+	 * frequency in the document. The reader is not closed.
+	 *
+	 * @param docName Document name to store in the occurrences
+	 * @param in Reader for the document's contents
+	 * @return Hash table of keywords in the document
+	 * @throws IOException If reading fails
+	 */
+	public HashMap<String,Occurrence> extract(String docName, Reader in)
+	throws IOException {
+		begin(null);
+		int n;
+		while ((n = in.read(readBuf)) != -1) {
+			scan(n, null);
+		}
+		return end(docName);
+	}
+	
+	/**
+	 * Scans a UTF-8 document like extract(docName, in), and also records the UTF-8 byte
+	 * offset and length of every keyword occurrence. The bytes are decoded here rather than
+	 * by a Reader, so that offsets count the bytes actually read: a malformed sequence is
+	 * replaced by U+FFFD, as by a Reader, but counts as the bytes it took up in the document.
+	 * The stream is not closed.
+	 *
+	 * @param docName Document name to store in the occurrences
+	 * @param in Stream with the document's contents
+	 * @param offsets Entry that receives the offsets, or null to record none
+	 * @return Hash table of keywords in the document
+	 * @throws IOException If reading fails
+	 */
+	public HashMap<String,Occurrence> extract(String docName, InputStream in, DocumentStore.Entry offsets)
+	throws IOException {
+		begin(offsets);
+		decoder.reset();
+		ByteBuffer bytes = ByteBuffer.wrap(byteBuf);
+		// one char is kept free for the replacement of a malformed sequence
+		CharBuffer chars = CharBuffer.wrap(readBuf);
+		boolean eof = false;
+		while (!eof) {
+			int r = in.read(byteBuf, bytes.position(), bytes.remaining());
+			if (r < 0)
+				eof = true;
+			else
+				bytes.position(bytes.position() + r);
+			bytes.flip();
+			while (true) {
+				chars.clear().limit(readBuf.length-1);
+				CoderResult result = decoder.decode(bytes, chars, eof);
+				int n = chars.position();
+				for (int i = 0; i < n; i++) {
+					charBytes[i] = utf8Length(readBuf[i]);
+				}
+				if (result.isError()) {
+					readBuf[n] = '\uFFFD';
+					charBytes[n++] = result.length();
+					bytes.position(bytes.position() + result.length());
+				}
+				scan(n, charBytes);
+				if (result.isUnderflow())
+					break;
+			}
+			bytes.compact();
+		}
+		return end(docName);
+	}
+	
+	private void begin(DocumentStore.Entry offsets) {
+		clearTerms();
+		this.offsets = offsets;
+		len = 0;
+		bytePos = 0;
+		wordStart = 0;
+	}
+	
+	/**
+	 * Splits n chars of readBuf into words. If offsets are recorded, charBytes holds the
+	 * number of document bytes each char was decoded from.
+	 */
+	private void scan(int n, int[] charBytes) {
+		int len = this.len, bytePos = this.bytePos, wordStart = this.wordStart;
+		for (int i = 0; i < n; i++) {
+			char c = readBuf[i];
+			if (charBytes != null)
+				bytePos += charBytes[i];
+			if (Character.isWhitespace(c)) {
+				if (len > 0) {
+					addWord(len, wordStart);
+					len = 0;
+				}
+				wordStart = bytePos;
+			} else {
+				if (len == word.length - 1) { // keep one spare char for the stemmer
+					char[] bigger = new char[word.length * 2];
+					System.arraycopy(word, 0, bigger, 0, len);
+					word = bigger;
+				}
+				word[len++] = c;
+			}
+		}
+		this.len = len;
+		this.bytePos = bytePos;
+		this.wordStart = wordStart;
+	}
+	
+	private HashMap<String,Occurrence> end(String docName) {
+		if (len > 0)
+			addWord(len, wordStart);
+		this.offsets = null;
+		
+		HashMap<String,Occurrence> docHash = new HashMap<String,Occurrence>(numTerms*2);
+		for (int i = 0; i < terms.length; i++) {
+			if (terms[i] != null)
+				docHash.put(terms[i], new Occurrence(docName, counts[i]));
+		}
+		return docHash;
+	}
+	
+	/**
+	 * Checks the word in the buffer, and counts it if it is a keyword.
+	 */
+	private void addWord(int len, int wordStart) {
+		int wordBytes = 0;
+		if (offsets != null) {
+			int stripped = len;
+			while (stripped > 0 && !Character.isAlphabetic(word[stripped-1])) {
+				stripped--;
+			}
+			for (int i = 0; i < stripped; i++) {
+				wordBytes += utf8Length(word[i]);
+			}
+		}
+		len = normalize(len);
+		if (len == 0)
+			return;
+		int hash = 0;
+		for (int i = 0; i < len; i++) {
+			hash = 31*hash + word[i]; // same as String.hashCode
+		}
+		int mask = terms.length - 1;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (terms[slot] != null) {
+			if (hashes[slot] == hash && sameChars(terms[slot], len)) {
+				counts[slot]++;
+				if (offsets != null)
+					offsets.add(terms[slot], wordStart, wordBytes);
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		terms[slot] = new String(word, 0, len);
+		hashes[slot] = hash;
+		counts[slot] = 1;
+		if (offsets != null)
+			offsets.add(terms[slot], wordStart, wordBytes);
+		if (++numTerms * 2 > terms.length)
+			grow();
+	}
+	
+	/**
+	 * Returns the number of bytes a char takes in UTF-8. Each half of a surrogate pair counts 2.
+	 */
+	private static int utf8Length(char c) {
+		if (c < 0x80)
+			return 1;
+		if (c < 0x800 || Character.isSurrogate(c))
+			return 2;
+		return 3;
+	}
+	
+	/**
+	 * Applies the keyword test to the word in the buffer, lower casing (and stemming) it in place.
+	 *
+	 * @return Length of the keyword, 0 if the word is not a keyword
+	 */
+	private int normalize(int len) {
+		// remove trailing non-alphabetic characters
+		while (len > 0 && !Character.isAlphabetic(word[len-1])) {
+			len--;
+		}
+		for (int i = 0; i < len; i++) {
+			if (!Character.isAlphabetic(word[i])) // if any character invalid
+				return 0;
+			word[i] = Character.toLowerCase(word[i]);
+		}
+		if (len == 0 || noiseWords.contains(word, 0, len))
+			return 0;
+		if (stemmer != null)
+			len = stemmer.stem(word, len);
+		return len;
+	}
+	
+	private boolean sameChars(String term, int len) {
+		if (term.length() != len)
+			return false;
+		for (int i = 0; i < len; i++) {
+			if (term.charAt(i) != word[i])
+				return false;
+		}
+		return true;
+	}
+	
+	private void clearTerms() {
+		if (numTerms > 0) {
+			Arrays.fill(terms, null);
+			numTerms = 0;
+		}
+	}
+	
+	private void grow() {
+		String[] oldTerms = terms;
+		int[] oldHashes = hashes, oldCounts = counts;
+		terms = new String[oldTerms.length * 2];
+		hashes = new int[terms.length];
+		counts = new int[terms.length];
+		int mask = terms.length - 1;
+		for (int i = 0; i < oldTerms.length; i++) {
+			if (oldTerms[i] == null)
+				continue;
+			int slot = (oldHashes[i] ^ (oldHashes[i] >>> 16)) & mask;
+			while (terms[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			terms[slot] = oldTerms[i];
+			hashes[slot] = oldHashes[i];
+			counts[slot] = oldCounts[i];
+		}
+	}
+}
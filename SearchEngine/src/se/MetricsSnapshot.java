@@ -0,0 +1,166 @@
+package se;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+/**
+ * This class holds the values of a RecordingMetrics at about one point in time; values
+ * recorded while it is taken may be only partly included. Each histogram is summarized
+ * by its count, sum, maximum and the 50th, 90th, 99th and 99.9th percentiles.
+ *
+ */
+public class MetricsSnapshot {
+	
+	/**
+	 * Summary of one histogram.
+	 */
+	public static class Summary {
+		public final long count;
+		public final long sum;
+		public final long max;
+		public final long p50;
+		public final long p90;
+		public final long p99;
+		public final long p999;
+		
+		Summary(Histogram h) {
+			count = h.getCount();
+			sum = h.getSum();
+			max = h.getMax();
+			p50 = h.getValueAtPercentile(50);
+			p90 = h.getValueAtPercentile(90);
+			p99 = h.getValueAtPercentile(99);
+			p999 = h.getValueAtPercentile(99.9);
+		}
+		
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		public String toString() {
+			return "count=" + count + " p50=" + p50 + " p90=" + p90 + " p99=" + p99
+					+ " p99.9=" + p999 + " max=" + max;
+		}
+	}
+	
+	/**
+	 * Time to scan a document for keywords, in nanoseconds.
+	 */
+	public final Summary scanNanos;
+	
+	/**
+	 * Time to merge a document's keywords into the index, in nanoseconds.
+	 */
+	public final Summary mergeNanos;
+	
+	/**
+	 * Time taken by a search, in nanoseconds.
+	 */
+	public final Summary searchNanos;
+	
+	/**
+	 * Lengths of the occurrence lists merged by searches.
+	 */
+	public final Summary postingListLengths;
+	
+	public final long keywordsScanned;
+	public final long keywordsMerged;
+	public final long cacheHits;
+	public final long cacheMisses;
+	
+	MetricsSnapshot(RecordingMetrics m) {
+		scanNanos = new Summary(m.scanNanos);
+		mergeNanos = new Summary(m.mergeNanos);
+		searchNanos = new Summary(m.searchNanos);
+		postingListLengths = new Summary(m.postingListLengths);
+		keywordsScanned = m.keywordsScanned.sum();
+		keywordsMerged = m.keywordsMerged.sum();
+		cacheHits = m.cacheHits.sum();
+		cacheMisses = m.cacheMisses.sum();
+	}
+	
+	/**
+	 * Returns the fraction of searches answered from the query cache.
+	 *
+	 * @return Hit rate between 0 and 1, 0 if there were no searches
+	 */
+	public double getCacheHitRate() {
+		long total = cacheHits + cacheMisses;
+		return total == 0 ? 0.0 : (double) cacheHits / total;
+	}
+	
+	/**
+	 * Formats this snapshot in the Prometheus text exposition format. Histograms become
+	 * summaries; latencies are converted to seconds, as Prometheus conventions ask.
+	 *
+	 * @return Prometheus text
+	 */
+	public String toPrometheus() {
+		StringBuilder sb = new StringBuilder();
+		summary(sb, "se_document_scan_seconds", "Time to scan a document for keywords.", scanNanos, 1e-9);
+		summary(sb, "se_document_merge_seconds", "Time to merge a document into the index.", mergeNanos, 1e-9);
+		summary(sb, "se_search_seconds", "Time taken by top5search.", searchNanos, 1e-9);
+		summary(sb, "se_search_posting_list_length", "Length of occurrence lists merged by searches.",
+				postingListLengths, 1);
+		counter(sb, "se_keywords_scanned_total", "Distinct keywords found in scanned documents.", keywordsScanned);
+		counter(sb, "se_keywords_merged_total", "Keywords merged into the index.", keywordsMerged);
+		counter(sb, "se_query_cache_hits_total", "Searches answered from the query cache.", cacheHits);
+		counter(sb, "se_query_cache_misses_total", "Searches not answered from the query cache.", cacheMisses);
+		return sb.toString();
+	}
+	
+	/**
+	 * Writes this snapshot to a file in the Prometheus text format, for example for the
+	 * node exporter's textfile collector. The file is written under a temporary name and
+	 * then renamed, so a scraper never reads a partial file.
+	 *
+	 * @param file File to write
+	 * @throws IOException If the file cannot be written
+	 */
+	public void writePrometheus(File file)
+	throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		PrintWriter pw = new PrintWriter(tmp, "UTF-8");
+		pw.print(toPrometheus());
+		pw.close();
+		Files.move(tmp.toPath(), file.toPath(), 
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	private static void summary(StringBuilder sb, String name, String help, Summary s, double scale) {
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(" summary\n");
+		quantile(sb, name, "0.5", s.p50 * scale);
+		quantile(sb, name, "0.9", s.p90 * scale);
+		quantile(sb, name, "0.99", s.p99 * scale);
+		quantile(sb, name, "0.999", s.p999 * scale);
+		sb.append(name).append("_sum ").append(format(s.sum * scale)).append('\n');
+		sb.append(name).append("_count ").append(s.count).append('\n');
+	}
+	
+	private static void quantile(StringBuilder sb, String name, String q, double value) {
+		sb.append(name).append("{quantile=\"").append(q).append("\"} ").append(format(value)).append('\n');
+	}
+	
+	private static void counter(StringBuilder sb, String name, String help, long value) {
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(" counter\n");
+		sb.append(name).append(' ').append(value).append('\n');
+	}
+	
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.9g", value);
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "scan(ns): " + scanNanos + "\nmerge(ns): " + mergeNanos + "\nsearch(ns): " + searchNanos
+				+ "\nposting list length: " + postingListLengths
+				+ String.format(Locale.ROOT, "\ncache hit rate: %.3f", getCacheHitRate());
+	}
+}
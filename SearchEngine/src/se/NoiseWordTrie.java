@@ -0,0 +1,147 @@
+package se;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * This class implements an immutable trie over the set of noise words, so that a candidate
+ * keyword can be checked directly in a char buffer, without building a String for it.
+ * Nodes are numbered in breadth-first order. The children of a node are stored as a run
+ * of entries, sorted by character, in the parallel arrays childChars and childNodes, and
+ * are found by binary search.
+ *
+ */
+public class NoiseWordTrie {
+	
+	/**
+	 * Index into childChars/childNodes of the first child of each node.
+	 */
+	private final int[] childStart;
+	
+	/**
+	 * Number of children of each node.
+	 */
+	private final int[] childCount;
+	
+	/**
+	 * Whether the path to each node spells a noise word.
+	 */
+	private final boolean[] isWord;
+	
+	/**
+	 * Edge characters, sorted within each node's run.
+	 */
+	private final char[] childChars;
+	
+	/**
+	 * Child node numbers, parallel to childChars.
+	 */
+	private final int[] childNodes;
+	
+	/**
+	 * Number of distinct noise words.
+	 */
+	private final int size;
+	
+	/**
+	 * Builds the trie for the given noise words.
+	 *
+	 * @param words Noise words
+	 */
+	public NoiseWordTrie(Collection<String> words) {
+		String[] sorted = words.toArray(new String[words.size()]);
+		Arrays.sort(sorted);
+		
+		// breadth-first: each pending node is a range of sorted words sharing a prefix of length depth
+		ArrayList<int[]> nodes = new ArrayList<int[]>(); // {from, to, depth}
+		nodes.add(new int[] { 0, sorted.length, 0 });
+		ArrayList<Character> chars = new ArrayList<Character>();
+		ArrayList<Integer> children = new ArrayList<Integer>();
+		ArrayList<int[]> runs = new ArrayList<int[]>(); // {start, count}
+		ArrayList<Boolean> wordEnds = new ArrayList<Boolean>();
+		for (int n = 0; n < nodes.size(); n++) {
+			int from = nodes.get(n)[0], to = nodes.get(n)[1], depth = nodes.get(n)[2];
+			boolean word = false;
+			int start = chars.size();
+			int i = from;
+			while (i < to) {
+				if (sorted[i].length() == depth) { // this word ends here
+					word = true;
+					i++;
+					continue;
+				}
+				char c = sorted[i].charAt(depth);
+				int j = i;
+				while (j < to && sorted[j].charAt(depth) == c) {
+					j++;
+				}
+				chars.add(c);
+				children.add(nodes.size());
+				nodes.add(new int[] { i, j, depth+1 });
+				i = j;
+			}
+			runs.add(new int[] { start, chars.size() - start });
+			wordEnds.add(word);
+		}
+		
+		childStart = new int[nodes.size()];
+		childCount = new int[nodes.size()];
+		isWord = new boolean[nodes.size()];
+		int count = 0;
+		for (int n = 0; n < nodes.size(); n++) {
+			childStart[n] = runs.get(n)[0];
+			childCount[n] = runs.get(n)[1];
+			isWord[n] = wordEnds.get(n);
+			if (isWord[n])
+				count++;
+		}
+		size = count;
+		childChars = new char[chars.size()];
+		childNodes = new int[chars.size()];
+		for (int i = 0; i < childChars.length; i++) {
+			childChars[i] = chars.get(i);
+			childNodes[i] = children.get(i);
+		}
+	}
+	
+	/**
+	 * Returns the number of distinct noise words in the trie.
+	 *
+	 * @return Number of words
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Tells if the given characters spell a noise word.
+	 *
+	 * @param buf Buffer holding the candidate word
+	 * @param off Start of the word in the buffer
+	 * @param len Length of the word
+	 * @return True if the word is a noise word, false otherwise
+	 */
+	public boolean contains(char[] buf, int off, int len) {
+		int node = 0;
+		for (int i = off; i < off+len; i++) {
+			int lo = childStart[node], hi = lo + childCount[node] - 1;
+			int found = -1;
+			while (lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				if (childChars[mid] < buf[i])
+					lo = mid+1;
+				else if (childChars[mid] > buf[i])
+					hi = mid-1;
+				else {
+					found = mid;
+					break;
+				}
+			}
+			if (found == -1)
+				return false;
+			node = childNodes[found];
+		}
+		return isWord[node];
+	}
+}
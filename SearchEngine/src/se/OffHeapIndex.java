@@ -0,0 +1,558 @@
+package se;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class encapsulates a read-only keyword index kept outside the Java heap, in direct
+ * byte buffers, so that a large index costs the garbage collector only a handful of objects.
+ * It holds the same information as SearchEngine.keywordsIndex:
+ *
+ * - a term table, an open-addressing hash table whose slots hold the offset of the keyword's
+ *   characters, its hash, and the position and length of its posting block;
+ * - the keyword characters, each keyword stored as its length followed by its chars;
+ * - posting blocks, one per keyword, of (document id, frequency) int pairs in DESCENDING
+ *   order of frequency, split over buffers of 1 GB so that the postings can exceed 2 GB;
+ * - the document names, stored like the keywords, with a table of their offsets and a
+ *   table of document ids in order of name, for looking documents up by name.
+ *
+ * An index is written once, by build from an on-heap index or by merge from two off-heap
+ * indexes, and never grows afterwards. Documents are deleted by marking their id in a
+ * deletion bitmap, which is replaced, never modified, so searches never block. Deleted
+ * postings, and keywords left without postings, are dropped when indexes are merged.
+ *
+ * Direct buffers count against -XX:MaxDirectMemorySize, not the heap size.
+ *
+ */
+public class OffHeapIndex {
+	
+	/**
+	 * Bytes per term table slot: keyword offset + 1 (0 in empty slots), hash, posting
+	 * count, and position of the first posting.
+	 */
+	private static final int SLOT_BYTES = 20;
+	
+	/**
+	 * Postings per buffer, as a power of 2: 2^27 postings of 8 bytes each make 1 GB.
+	 */
+	private static final int CHUNK_SHIFT = 27;
+	
+	private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+	
+	/**
+	 * Term table.
+	 */
+	private final ByteBuffer slots;
+	
+	/**
+	 * Number of slots minus 1; the number of slots is a power of 2.
+	 */
+	private final int mask;
+	
+	/**
+	 * Keyword characters.
+	 */
+	private final ByteBuffer terms;
+	
+	/**
+	 * Posting blocks.
+	 */
+	private final ByteBuffer[] postings;
+	
+	/**
+	 * Document name characters.
+	 */
+	private final ByteBuffer docNames;
+	
+	/**
+	 * Offset of each document name in docNames, indexed by document id.
+	 */
+	private final ByteBuffer docOffsets;
+	
+	/**
+	 * Document ids, in order of document name.
+	 */
+	private final ByteBuffer docOrder;
+	
+	private final int numTerms;
+	
+	private final int numDocs;
+	
+	private final long numPostings;
+	
+	/**
+	 * End of the keyword characters written so far, while building.
+	 */
+	private int termEnd;
+	
+	/**
+	 * Ids of deleted documents.
+	 */
+	private volatile BitSet deleted = new BitSet();
+	
+	private OffHeapIndex(int numTerms, int numDocs, long numPostings, int numSlots,
+			int termChars, int docChars) {
+		this.numTerms = numTerms;
+		this.numDocs = numDocs;
+		this.numPostings = numPostings;
+		mask = numSlots - 1;
+		slots = allocate((long) numSlots * SLOT_BYTES);
+		terms = allocate(4L*numTerms + 2L*termChars);
+		docNames = allocate(4L*numDocs + 2L*docChars);
+		docOffsets = allocate(4L*numDocs);
+		docOrder = allocate(4L*numDocs);
+		int numChunks = (int) ((numPostings + CHUNK_MASK) >>> CHUNK_SHIFT);
+		postings = new ByteBuffer[numChunks];
+		for (int c = 0; c < numChunks; c++) {
+			long size = Math.min(CHUNK_MASK+1, numPostings - ((long) c << CHUNK_SHIFT));
+			postings[c] = allocate(size * 8);
+		}
+	}
+	
+	private static ByteBuffer allocate(long bytes) {
+		if (bytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("index too large for an off-heap buffer: " + bytes + " bytes");
+		}
+		return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+	}
+	
+	/**
+	 * Builds an off-heap index from an on-heap index. Keywords without occurrences are left out.
+	 *
+	 * @param delta On-heap index, occurrence lists in descending order of frequency
+	 * @return New off-heap index
+	 */
+	public static OffHeapIndex build(Map<String,ArrayList<Occurrence>> delta) {
+		HashMap<String,Integer> docIds = new HashMap<String,Integer>();
+		ArrayList<String> docs = new ArrayList<String>();
+		ArrayList<String> keywords = new ArrayList<String>();
+		long numPostings = 0;
+		long termChars = 0;
+		for (Map.Entry<String,ArrayList<Occurrence>> entry: delta.entrySet()) {
+			if (entry.getValue().isEmpty())
+				continue;
+			keywords.add(entry.getKey());
+			termChars += entry.getKey().length();
+			numPostings += entry.getValue().size();
+			for (Occurrence occ: entry.getValue()) {
+				if (!docIds.containsKey(occ.document)) {
+					docIds.put(occ.document, docs.size());
+					docs.add(occ.document);
+				}
+			}
+		}
+		OffHeapIndex index = create(docs, keywords.size(), termChars, numPostings);
+		long posting = 0;
+		for (String term: keywords) {
+			ArrayList<Occurrence> occs = delta.get(term);
+			index.putTerm(term, posting, occs.size());
+			for (Occurrence occ: occs) {
+				index.putPosting(posting++, docIds.get(occ.document), occ.frequency);
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * Merges two off-heap indexes into a new one, copying postings from buffer to buffer.
+	 * Deleted documents and keywords left without live postings are dropped. Among equal
+	 * frequencies the occurrences of the newer index come first, as if its documents had
+	 * been merged last.
+	 *
+	 * @param older Index of the documents indexed first
+	 * @param newer Index of the documents indexed later
+	 * @return New off-heap index
+	 */
+	public static OffHeapIndex merge(OffHeapIndex older, OffHeapIndex newer) {
+		BitSet olderDeleted = older.deleted, newerDeleted = newer.deleted;
+		HashMap<String,Integer> docIds = new HashMap<String,Integer>();
+		ArrayList<String> docs = new ArrayList<String>();
+		int[] olderIds = liveIds(older, olderDeleted, docIds, docs);
+		int[] newerIds = liveIds(newer, newerDeleted, docIds, docs);
+		
+		// keywords with live postings in either index
+		ArrayList<String> keywords = new ArrayList<String>();
+		long numPostings = 0;
+		long termChars = 0;
+		for (int s = 0; s <= older.mask; s++) {
+			if (!older.slotUsed(s))
+				continue;
+			String term = older.term(s);
+			int ns = newer.find(term);
+			long live = older.liveCount(s, olderDeleted) + (ns < 0 ? 0 : newer.liveCount(ns, newerDeleted));
+			if (live > 0) {
+				keywords.add(term);
+				numPostings += live;
+				termChars += term.length();
+			}
+		}
+		for (int s = 0; s <= newer.mask; s++) {
+			if (!newer.slotUsed(s))
+				continue;
+			String term = newer.term(s);
+			long live = newer.liveCount(s, newerDeleted);
+			if (live > 0 && older.find(term) < 0) {
+				keywords.add(term);
+				numPostings += live;
+				termChars += term.length();
+			}
+		}
+		OffHeapIndex index = create(docs, keywords.size(), termChars, numPostings);
+		
+		long posting = 0;
+		for (String term: keywords) {
+			long first = posting;
+			long o = 0, oEnd = 0, n = 0, nEnd = 0;
+			int os = older.find(term), ns = newer.find(term);
+			if (os >= 0) {
+				o = older.firstPosting(os);
+				oEnd = o + older.postingCount(os);
+			}
+			if (ns >= 0) {
+				n = newer.firstPosting(ns);
+				nEnd = n + newer.postingCount(ns);
+			}
+			while (true) {
+				while (o < oEnd && olderDeleted.get(older.postingDoc(o))) {
+					o++;
+				}
+				while (n < nEnd && newerDeleted.get(newer.postingDoc(n))) {
+					n++;
+				}
+				if (o >= oEnd && n >= nEnd)
+					break;
+				if (o >= oEnd || (n < nEnd && newer.postingFrequency(n) >= older.postingFrequency(o))) {
+					index.putPosting(posting++, newerIds[newer.postingDoc(n)], newer.postingFrequency(n));
+					n++;
+				} else {
+					index.putPosting(posting++, olderIds[older.postingDoc(o)], older.postingFrequency(o));
+					o++;
+				}
+			}
+			index.putTerm(term, first, (int) (posting - first));
+		}
+		return index;
+	}
+	
+	/**
+	 * Assigns new ids to the live documents of an index, appending their names to docs.
+	 *
+	 * @return New id of each old document id, -1 for deleted documents
+	 */
+	private static int[] liveIds(OffHeapIndex index, BitSet deleted, HashMap<String,Integer> docIds,
+			ArrayList<String> docs) {
+		int[] ids = new int[index.numDocs];
+		for (int d = 0; d < index.numDocs; d++) {
+			ids[d] = -1;
+			if (!deleted.get(d)) {
+				String doc = index.document(d);
+				Integer id = docIds.get(doc);
+				if (id == null) {
+					id = docs.size();
+					docIds.put(doc, id);
+					docs.add(doc);
+				}
+				ids[d] = id;
+			}
+		}
+		return ids;
+	}
+	
+	/**
+	 * Allocates an index for the given documents, keywords and postings, and writes the
+	 * document tables. Keywords and postings are written by the caller.
+	 */
+	private static OffHeapIndex create(ArrayList<String> docs, int numTerms, long termChars, long numPostings) {
+		long docChars = 0;
+		for (String doc: docs) {
+			docChars += doc.length();
+		}
+		int numSlots = 16;
+		while (numSlots < numTerms * 2) {
+			numSlots *= 2;
+		}
+		if (termChars > Integer.MAX_VALUE || docChars > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("too many characters for an off-heap index");
+		}
+		OffHeapIndex index = new OffHeapIndex(numTerms, docs.size(), numPostings, numSlots,
+				(int) termChars, (int) docChars);
+		
+		int pos = 0;
+		for (int d = 0; d < docs.size(); d++) {
+			index.docOffsets.putInt(4*d, pos);
+			pos = putString(index.docNames, pos, docs.get(d));
+		}
+		Integer[] order = new Integer[docs.size()];
+		for (int d = 0; d < order.length; d++) {
+			order[d] = d;
+		}
+		final ArrayList<String> names = docs;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer d1, Integer d2) {
+				return names.get(d1).compareTo(names.get(d2));
+			}
+		});
+		for (int k = 0; k < order.length; k++) {
+			index.docOrder.putInt(4*k, order[k]);
+		}
+		return index;
+	}
+	
+	/**
+	 * Adds a keyword to the term table, with its posting block. Used only while building.
+	 */
+	private void putTerm(String term, long firstPosting, int count) {
+		int hash = spread(term.hashCode());
+		int s = hash & mask;
+		while (slotUsed(s)) {
+			s = (s + 1) & mask;
+		}
+		int at = s * SLOT_BYTES;
+		slots.putInt(at, termEnd + 1);
+		slots.putInt(at+4, hash);
+		slots.putInt(at+8, count);
+		slots.putLong(at+12, firstPosting);
+		termEnd = putString(terms, termEnd, term);
+	}
+	
+	/**
+	 * Writes a string as its length followed by its chars, and returns the position after it.
+	 */
+	private static int putString(ByteBuffer buf, int pos, String s) {
+		buf.putInt(pos, s.length());
+		pos += 4;
+		for (int i = 0; i < s.length(); i++) {
+			buf.putChar(pos, s.charAt(i));
+			pos += 2;
+		}
+		return pos;
+	}
+	
+	private static String getString(ByteBuffer buf, int pos) {
+		int len = buf.getInt(pos);
+		char[] chars = new char[len];
+		for (int i = 0; i < len; i++) {
+			chars[i] = buf.getChar(pos + 4 + 2*i);
+		}
+		return new String(chars);
+	}
+	
+	private static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+	
+	private boolean slotUsed(int s) {
+		return slots.getInt(s * SLOT_BYTES) != 0;
+	}
+	
+	private String term(int s) {
+		return getString(terms, slots.getInt(s * SLOT_BYTES) - 1);
+	}
+	
+	private int postingCount(int s) {
+		return slots.getInt(s * SLOT_BYTES + 8);
+	}
+	
+	private long firstPosting(int s) {
+		return slots.getLong(s * SLOT_BYTES + 12);
+	}
+	
+	private int postingDoc(long p) {
+		return postings[(int) (p >>> CHUNK_SHIFT)].getInt((int) (p & CHUNK_MASK) << 3);
+	}
+	
+	private int postingFrequency(long p) {
+		return postings[(int) (p >>> CHUNK_SHIFT)].getInt(((int) (p & CHUNK_MASK) << 3) + 4);
+	}
+	
+	private void putPosting(long p, int doc, int frequency) {
+		ByteBuffer chunk = postings[(int) (p >>> CHUNK_SHIFT)];
+		int at = (int) (p & CHUNK_MASK) << 3;
+		chunk.putInt(at, doc);
+		chunk.putInt(at+4, frequency);
+	}
+	
+	private int liveCount(int s, BitSet deleted) {
+		long p = firstPosting(s), end = p + postingCount(s);
+		int count = 0;
+		for (; p < end; p++) {
+			if (!deleted.get(postingDoc(p)))
+				count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Finds the term table slot of a keyword, comparing the stored chars in place.
+	 *
+	 * @param keyword Keyword
+	 * @return Slot, or -1 if the keyword is not in the index
+	 */
+	private int find(String keyword) {
+		int hash = spread(keyword.hashCode());
+		int s = hash & mask;
+		while (slotUsed(s)) {
+			int at = s * SLOT_BYTES;
+			if (slots.getInt(at+4) == hash && sameChars(slots.getInt(at) - 1, keyword))
+				return s;
+			s = (s + 1) & mask;
+		}
+		return -1;
+	}
+	
+	private boolean sameChars(int pos, String keyword) {
+		int len = terms.getInt(pos);
+		if (len != keyword.length())
+			return false;
+		for (int i = 0; i < len; i++) {
+			if (terms.getChar(pos + 4 + 2*i) != keyword.charAt(i))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns the name of a document.
+	 *
+	 * @param id Document id
+	 * @return Document name
+	 */
+	private String document(int id) {
+		return getString(docNames, docOffsets.getInt(4*id));
+	}
+	
+	/**
+	 * Finds a document by binary search of the ids in name order, comparing the stored chars
+	 * in place.
+	 *
+	 * @param docName Document name
+	 * @return Document id, or -1 if the document is not in the index
+	 */
+	private int findDocument(String docName) {
+		int lo = 0, hi = numDocs-1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int d = docOrder.getInt(4*mid);
+			int c = compareChars(docNames, docOffsets.getInt(4*d), docName);
+			if (c == 0)
+				return d;
+			if (c < 0)
+				lo = mid+1;
+			else
+				hi = mid-1;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Compares a stored string with s, as String.compareTo does.
+	 */
+	private static int compareChars(ByteBuffer buf, int pos, String s) {
+		int len = buf.getInt(pos);
+		int n = Math.min(len, s.length());
+		for (int i = 0; i < n; i++) {
+			char c = buf.getChar(pos + 4 + 2*i);
+			if (c != s.charAt(i))
+				return c - s.charAt(i);
+		}
+		return len - s.length();
+	}
+	
+	/**
+	 * Returns the first occurrences of a keyword in documents that are not deleted.
+	 *
+	 * @param keyword Keyword
+	 * @param max Maximum number of occurrences to return
+	 * @return Up to max occurrences, in descending order of frequency; empty if the keyword
+	 *         is not in the index
+	 */
+	public ArrayList<Occurrence> occurrences(String keyword, int max) {
+		ArrayList<Occurrence> occs = new ArrayList<Occurrence>();
+		int s = find(keyword);
+		if (s < 0)
+			return occs;
+		BitSet deleted = this.deleted;
+		long p = firstPosting(s), end = p + postingCount(s);
+		for (; p < end && occs.size() < max; p++) {
+			int doc = postingDoc(p);
+			if (!deleted.get(doc))
+				occs.add(new Occurrence(document(doc), postingFrequency(p)));
+		}
+		return occs;
+	}
+	
+	/**
+	 * Tells if a keyword has any occurrence in this index, deleted or not.
+	 *
+	 * @param keyword Keyword
+	 * @return True if the keyword is in the index
+	 */
+	public boolean containsKeyword(String keyword) {
+		return find(keyword) >= 0;
+	}
+	
+	/**
+	 * Deletes a document. Its postings are skipped by searches from now on. Callers must
+	 * serialize deletes.
+	 *
+	 * @param docName Document name
+	 * @return True if the document was in the index and not already deleted
+	 */
+	public boolean delete(String docName) {
+		BitSet deleted = this.deleted;
+		int d = findDocument(docName);
+		if (d < 0 || deleted.get(d))
+			return false;
+		BitSet copy = (BitSet) deleted.clone();
+		copy.set(d);
+		this.deleted = copy;
+		return true;
+	}
+	
+	/**
+	 * Returns the number of keywords.
+	 *
+	 * @return Keyword count
+	 */
+	public int size() {
+		return numTerms;
+	}
+	
+	/**
+	 * Returns the number of documents that are not deleted.
+	 *
+	 * @return Document count
+	 */
+	public int numDocs() {
+		return numDocs - deleted.cardinality();
+	}
+	
+	/**
+	 * Returns the number of postings, including those of deleted documents.
+	 *
+	 * @return Posting count
+	 */
+	public long numPostings() {
+		return numPostings;
+	}
+	
+	/**
+	 * Returns the number of bytes held outside the heap.
+	 *
+	 * @return Off-heap size in bytes
+	 */
+	public long offHeapBytes() {
+		long bytes = slots.capacity() + terms.capacity() + docNames.capacity() + docOffsets.capacity()
+				+ docOrder.capacity();
+		for (ByteBuffer chunk: postings) {
+			bytes += chunk.capacity();
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,352 @@
+package se;
+
+/**
+ * This class implements the Porter stemming algorithm (M.F. Porter, "An algorithm for
+ * suffix stripping", 1980), working in place on a lower case word held in a char buffer.
+ * It follows the structure of Porter's reference implementation, including its departures
+ * from the published paper (e.g. the "bli", "logi" rules).
+ *
+ * An instance keeps state between calls and must not be shared between threads.
+ *
+ */
+public class PorterStemmer {
+	
+	/**
+	 * Buffer holding the word being stemmed, starting at index 0.
+	 */
+	private char[] b;
+	
+	/**
+	 * Index of the last character of the word.
+	 */
+	private int k;
+	
+	/**
+	 * General offset into the word, set by ends.
+	 */
+	private int j;
+	
+	/**
+	 * Stems the word in buf[0..len-1]. The buffer must have room for at least len+1
+	 * characters, since some rules lengthen the word by one before later rules shorten it.
+	 *
+	 * @param buf Buffer holding the word, in lower case
+	 * @param len Length of the word
+	 * @return Length of the stem, which replaces the word in the buffer
+	 */
+	public int stem(char[] buf, int len) {
+		if (len <= 2)
+			return len;
+		b = buf;
+		k = len-1;
+		step1();
+		step2();
+		step3();
+		step4();
+		step5();
+		step6();
+		b = null;
+		return k+1;
+	}
+	
+	/**
+	 * Tells if b[i] is a consonant.
+	 */
+	private boolean cons(int i) {
+		switch (b[i]) {
+			case 'a': case 'e': case 'i': case 'o': case 'u':
+				return false;
+			case 'y':
+				return i == 0 ? true : !cons(i-1);
+			default:
+				return true;
+		}
+	}
+	
+	/**
+	 * Measures the number of consonant sequences between 0 and j. With c a consonant
+	 * sequence and v a vowel sequence, [c](vc)^m[v] gives m.
+	 */
+	private int m() {
+		int n = 0;
+		int i = 0;
+		while (true) {
+			if (i > j)
+				return n;
+			if (!cons(i))
+				break;
+			i++;
+		}
+		i++;
+		while (true) {
+			while (true) {
+				if (i > j)
+					return n;
+				if (cons(i))
+					break;
+				i++;
+			}
+			i++;
+			n++;
+			while (true) {
+				if (i > j)
+					return n;
+				if (!cons(i))
+					break;
+				i++;
+			}
+			i++;
+		}
+	}
+	
+	/**
+	 * Tells if 0..j contains a vowel.
+	 */
+	private boolean vowelInStem() {
+		for (int i = 0; i <= j; i++) {
+			if (!cons(i))
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Tells if i-1,i is a double consonant.
+	 */
+	private boolean doubleC(int i) {
+		if (i < 1 || b[i] != b[i-1])
+			return false;
+		return cons(i);
+	}
+	
+	/**
+	 * Tells if i-2,i-1,i has the form consonant - vowel - consonant, and the second
+	 * consonant is not w, x or y. Used to restore an e at the end of short words like
+	 * cav(e), lov(e), hop(e).
+	 */
+	private boolean cvc(int i) {
+		if (i < 2 || !cons(i) || cons(i-1) || !cons(i-2))
+			return false;
+		char ch = b[i];
+		return ch != 'w' && ch != 'x' && ch != 'y';
+	}
+	
+	/**
+	 * Tells if 0..k ends with s, and if so sets j to the end of the stem before s.
+	 */
+	private boolean ends(String s) {
+		int l = s.length();
+		int o = k-l+1;
+		if (o < 0)
+			return false;
+		for (int i = 0; i < l; i++) {
+			if (b[o+i] != s.charAt(i))
+				return false;
+		}
+		j = k-l;
+		return true;
+	}
+	
+	/**
+	 * Replaces j+1..k with s, adjusting k.
+	 */
+	private void setTo(String s) {
+		int l = s.length();
+		int o = j+1;
+		for (int i = 0; i < l; i++) {
+			b[o+i] = s.charAt(i);
+		}
+		k = j+l;
+	}
+	
+	private void r(String s) {
+		if (m() > 0)
+			setTo(s);
+	}
+	
+	/**
+	 * Gets rid of plurals and -ed or -ing.
+	 */
+	private void step1() {
+		if (b[k] == 's') {
+			if (ends("sses"))
+				k -= 2;
+			else if (ends("ies"))
+				setTo("i");
+			else if (b[k-1] != 's')
+				k--;
+		}
+		if (ends("eed")) {
+			if (m() > 0)
+				k--;
+		} else if ((ends("ed") || ends("ing")) && vowelInStem()) {
+			k = j;
+			if (ends("at"))
+				setTo("ate");
+			else if (ends("bl"))
+				setTo("ble");
+			else if (ends("iz"))
+				setTo("ize");
+			else if (doubleC(k)) {
+				k--;
+				char ch = b[k];
+				if (ch == 'l' || ch == 's' || ch == 'z')
+					k++;
+			} else if (m() == 1 && cvc(k))
+				setTo("e");
+		}
+	}
+	
+	/**
+	 * Turns terminal y to i when there is another vowel in the stem.
+	 */
+	private void step2() {
+		if (ends("y") && vowelInStem())
+			b[k] = 'i';
+	}
+	
+	/**
+	 * Maps double suffixes to single ones, e.g. -ization to -ize.
+	 */
+	private void step3() {
+		if (k == 0)
+			return;
+		switch (b[k-1]) {
+			case 'a':
+				if (ends("ational")) { r("ate"); break; }
+				if (ends("tional")) { r("tion"); break; }
+				break;
+			case 'c':
+				if (ends("enci")) { r("ence"); break; }
+				if (ends("anci")) { r("ance"); break; }
+				break;
+			case 'e':
+				if (ends("izer")) { r("ize"); break; }
+				break;
+			case 'l':
+				if (ends("bli")) { r("ble"); break; }
+				if (ends("alli")) { r("al"); break; }
+				if (ends("entli")) { r("ent"); break; }
+				if (ends("eli")) { r("e"); break; }
+				if (ends("ousli")) { r("ous"); break; }
+				break;
+			case 'o':
+				if (ends("ization")) { r("ize"); break; }
+				if (ends("ation")) { r("ate"); break; }
+				if (ends("ator")) { r("ate"); break; }
+				break;
+			case 's':
+				if (ends("alism")) { r("al"); break; }
+				if (ends("iveness")) { r("ive"); break; }
+				if (ends("fulness")) { r("ful"); break; }
+				if (ends("ousness")) { r("ous"); break; }
+				break;
+			case 't':
+				if (ends("aliti")) { r("al"); break; }
+				if (ends("iviti")) { r("ive"); break; }
+				if (ends("biliti")) { r("ble"); break; }
+				break;
+			case 'g':
+				if (ends("logi")) { r("log"); break; }
+				break;
+			default:
+				break;
+		}
+	}
+	
+	/**
+	 * Deals with -ic-, -full, -ness etc.
+	 */
+	private void step4() {
+		switch (b[k]) {
+			case 'e':
+				if (ends("icate")) { r("ic"); break; }
+				if (ends("ative")) { r(""); break; }
+				if (ends("alize")) { r("al"); break; }
+				break;
+			case 'i':
+				if (ends("iciti")) { r("ic"); break; }
+				break;
+			case 'l':
+				if (ends("ical")) { r("ic"); break; }
+				if (ends("ful")) { r(""); break; }
+				break;
+			case 's':
+				if (ends("ness")) { r(""); break; }
+				break;
+			default:
+				break;
+		}
+	}
+	
+	/**
+	 * Takes off -ant, -ence etc., in context <c>vcvc<v>.
+	 */
+	private void step5() {
+		if (k == 0)
+			return;
+		switch (b[k-1]) {
+			case 'a':
+				if (ends("al")) break;
+				return;
+			case 'c':
+				if (ends("ance")) break;
+				if (ends("ence")) break;
+				return;
+			case 'e':
+				if (ends("er")) break;
+				return;
+			case 'i':
+				if (ends("ic")) break;
+				return;
+			case 'l':
+				if (ends("able")) break;
+				if (ends("ible")) break;
+				return;
+			case 'n':
+				if (ends("ant")) break;
+				if (ends("ement")) break;
+				if (ends("ment")) break;
+				if (ends("ent")) break;
+				return;
+			case 'o':
+				if (ends("ion") && j >= 0 && (b[j] == 's' || b[j] == 't')) break;
+				if (ends("ou")) break;
+				return;
+			case 's':
+				if (ends("ism")) break;
+				return;
+			case 't':
+				if (ends("ate")) break;
+				if (ends("iti")) break;
+				return;
+			case 'u':
+				if (ends("ous")) break;
+				return;
+			case 'v':
+				if (ends("ive")) break;
+				return;
+			case 'z':
+				if (ends("ize")) break;
+				return;
+			default:
+				return;
+		}
+		if (m() > 1)
+			k = j;
+	}
+	
+	/**
+	 * Removes a final -e if m() > 1, and changes -ll to -l if m() > 1.
+	 */
+	private void step6() {
+		j = k;
+		if (b[k] == 'e') {
+			int a = m();
+			if (a > 1 || a == 1 && !cvc(k-1))
+				k--;
+		}
+		if (b[k] == 'l' && doubleC(k) && m() > 1)
+			k--;
+	}
+}
@@ -0,0 +1,284 @@
+package se;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class implements a bounded cache of search results, keyed by the normalized
+ * (lower case) keyword pair of a query. Entries are evicted in approximately
+ * least-recently-used order (the CLOCK algorithm: a lookup marks its entry, and eviction
+ * passes over marked entries once, clearing the mark), and a small frequency sketch
+ * decides whether a new entry may evict the victim (TinyLFU admission), so that a burst
+ * of one-off queries cannot flush out the hot ones.
+ *
+ * The cache holds no knowledge of the index - the owner must call clear() whenever
+ * documents are added or removed. All methods are thread safe. Lookups take no lock: they
+ * read a ConcurrentHashMap, and update the sketch counters and the entry's mark without
+ * synchronization, so that a lost update only makes the sketch slightly less exact. Only
+ * put and clear are serialized. A result computed while the index was changing is not
+ * stored, as long as it is put with the generation that was read before the index was searched.
+ *
+ */
+public class QueryCache {
+
+	/**
+	 * A cached result.
+	 */
+	private static class Entry {
+		final String key;
+		final ArrayList<String> result;
+		/**
+		 * Set by lookups, cleared when the eviction hand passes the entry.
+		 */
+		volatile boolean referenced;
+		Entry(String key, ArrayList<String> result) {
+			this.key = key;
+			this.result = result;
+		}
+	}
+
+	/**
+	 * Cached results, replaced by an empty map when the cache is cleared.
+	 */
+	private volatile ConcurrentHashMap<String,Entry> entries;
+
+	/**
+	 * Entries in eviction order, the next candidate first. Guarded by the cache's lock.
+	 */
+	private ArrayDeque<Entry> clock;
+
+	/**
+	 * Maximum number of cached queries.
+	 */
+	private final int capacity;
+
+	/**
+	 * Count-min sketch of recent query frequencies, 4 rows of 4-bit counters stored
+	 * one per byte. Updated without synchronization.
+	 */
+	private final byte[][] sketch;
+
+	/**
+	 * Number of increments since the sketch was last aged, counted without synchronization.
+	 */
+	private int samples;
+
+	/**
+	 * Number of lookups that found a cached result.
+	 */
+	private final LongAdder hits = new LongAdder();
+
+	/**
+	 * Number of lookups that did not find a cached result.
+	 */
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Number of times the cache has been cleared.
+	 */
+	private volatile long generation;
+
+	/**
+	 * Largest number of counters per sketch row, so that a huge capacity neither overflows
+	 * nor allocates more than 64 MB of sketch.
+	 */
+	private static final int MAX_WIDTH = 1 << 24;
+
+	private static final int[] SEEDS = { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F };
+
+	/**
+	 * Initializes an empty cache that holds up to capacity queries.
+	 *
+	 * @param capacity Maximum number of cached queries, 0 disables caching
+	 */
+	public QueryCache(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative");
+		}
+		this.capacity = capacity;
+		entries = new ConcurrentHashMap<String,Entry>();
+		clock = new ArrayDeque<Entry>();
+		int counters = (int) Math.min(MAX_WIDTH, Math.max(16L, capacity * 4L));
+		int width = Integer.highestOneBit(counters - 1) << 1;
+		sketch = new byte[SEEDS.length][width];
+		samples /= 2;
+	}
+
+	/**
+	 * Builds the cache key for a query. Keywords are expected to be normalized already.
+	 *
+	 * @param kw1 First keyword
+	 * @param kw2 Second keyword
+	 * @return Cache key
+	 */
+	static String key(String kw1, String kw2) {
+		return kw1 + '\u0000' + kw2;
+	}
+
+	/**
+	 * Returns the cached result for a query, and records the access in the frequency sketch.
+	 * Never blocks.
+	 *
+	 * @param key Cache key, from the key method
+	 * @return Cached result (the caller must not modify it), or null if the query is not cached
+	 */
+	public ArrayList<String> get(String key) {
+		if (capacity == 0) {
+			return null;
+		}
+		increment(key);
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		if (!entry.referenced) // a hot entry is only written once per pass of the hand
+			entry.referenced = true;
+		return entry.result;
+	}
+
+	/**
+	 * Returns the current generation of the cache, which changes every time it is cleared.
+	 *
+	 * @return Generation number
+	 */
+	public long generation() {
+		return generation;
+	}
+
+	/**
+	 * Stores the result of a query. If the cache is full, the new entry is only admitted
+	 * if its query has been seen more often than the eviction victim's query.
+	 *
+	 * @param key Cache key, from the key method
+	 * @param result Search result (the cache keeps its own copy)
+	 * @param generation Generation read before the result was computed; if the cache has
+	 *        been cleared since, the result may be stale and is dropped
+	 */
+	public synchronized void put(String key, ArrayList<String> result, long generation) {
+		if (capacity == 0 || generation != this.generation || entries.containsKey(key)) {
+			return;
+		}
+		age();
+		if (clock.size() >= capacity) {
+			// the hand gives each referenced entry a second chance; after a full turn it
+			// takes the next entry even if a lookup has marked it again meanwhile
+			Entry victim = clock.pollFirst();
+			for (int turn = clock.size(); victim.referenced && turn > 0; turn--) {
+				victim.referenced = false;
+				clock.addLast(victim);
+				victim = clock.pollFirst();
+			}
+			if (frequency(key) <= frequency(victim.key)) {
+				clock.addFirst(victim);
+				return;
+			}
+			entries.remove(victim.key);
+		}
+		Entry entry = new Entry(key, new ArrayList<String>(result));
+		clock.addLast(entry);
+		entries.put(key, entry);
+	}
+
+	/**
+	 * Discards all cached results. Frequency history and hit/miss counts are kept,
+	 * since they describe the query stream and not the index.
+	 */
+	public synchronized void clear() {
+		entries = new ConcurrentHashMap<String,Entry>();
+		clock = new ArrayDeque<Entry>();
+		generation++;
+	}
+
+	/**
+	 * Returns the number of cached queries.
+	 *
+	 * @return Number of entries
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of lookups that were answered from the cache.
+	 *
+	 * @return Hit count
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of lookups that were not answered from the cache.
+	 *
+	 * @return Miss count
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the fraction of lookups answered from the cache.
+	 *
+	 * @return Hit rate between 0 and 1, 0 if there were no lookups
+	 */
+	public double getHitRate() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return total == 0 ? 0.0 : (double) h / total;
+	}
+
+	/**
+	 * Counts an access in the sketch. Concurrent increments may be lost, which only
+	 * undercounts.
+	 */
+	private void increment(String key) {
+		int hash = spread(key.hashCode());
+		for (int i = 0; i < sketch.length; i++) {
+			int slot = indexOf(hash, i);
+			byte count = sketch[i][slot];
+			if (count < 15) {
+				sketch[i][slot] = (byte) (count + 1);
+			}
+		}
+		samples++;
+	}
+
+	/**
+	 * Ages all counters, so that old popularity fades away, once enough accesses have been
+	 * counted. Called under the lock, so that only one thread ages at a time.
+	 */
+	private void age() {
+		if (samples < sketch[0].length * 10)
+			return;
+		for (byte[] row: sketch) {
+			for (int j = 0; j < row.length; j++) {
+				row[j] >>= 1;
+			}
+		}
+		samples /= 2;
+	}
+
+	private int frequency(String key) {
+		int hash = spread(key.hashCode());
+		int min = 15;
+		for (int i = 0; i < sketch.length; i++) {
+			min = Math.min(min, sketch[i][indexOf(hash, i)]);
+		}
+		return min;
+	}
+
+	private int indexOf(int hash, int row) {
+		int h = (hash ^ SEEDS[row]) * SEEDS[row];
+		return (h ^ (h >>> 16)) & (sketch[row].length - 1);
+	}
+
+	private static int spread(int h) {
+		h ^= h >>> 16;
+		h *= 0x45D9F3B;
+		return h ^ (h >>> 16);
+	}
+}
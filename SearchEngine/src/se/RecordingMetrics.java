@@ -0,0 +1,56 @@
+package se;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class records SearchEngine measurements in counters and histograms, cheaply enough
+ * to be left on in production. Latencies are kept in nanoseconds. A view of all metrics is
+ * taken with snapshot, which can also be written out in the Prometheus text format. The
+ * snapshot reads the metrics one by one without stopping recording, so it is approximate:
+ * while documents are indexed or searched, it may include a value in one counter or
+ * histogram and not yet in another, or in a histogram's count but not its sum.
+ *
+ */
+public class RecordingMetrics implements SearchMetrics {
+	
+	final Histogram scanNanos = new Histogram();
+	final Histogram mergeNanos = new Histogram();
+	final Histogram searchNanos = new Histogram();
+	final Histogram postingListLengths = new Histogram();
+	
+	final LongAdder keywordsScanned = new LongAdder();
+	final LongAdder keywordsMerged = new LongAdder();
+	final LongAdder cacheHits = new LongAdder();
+	final LongAdder cacheMisses = new LongAdder();
+	
+	public void documentScanned(long nanos, int keywords) {
+		scanNanos.record(nanos);
+		keywordsScanned.add(keywords);
+	}
+	
+	public void documentMerged(long nanos, int keywords) {
+		mergeNanos.record(nanos);
+		keywordsMerged.add(keywords);
+	}
+	
+	public void searched(long nanos, boolean cacheHit) {
+		searchNanos.record(nanos);
+		if (cacheHit)
+			cacheHits.increment();
+		else
+			cacheMisses.increment();
+	}
+	
+	public void postingListScanned(int length) {
+		postingListLengths.record(length);
+	}
+	
+	/**
+	 * Takes a snapshot of all metrics.
+	 *
+	 * @return Snapshot
+	 */
+	public MetricsSnapshot snapshot() {
+		return new MetricsSnapshot(this);
+	}
+}
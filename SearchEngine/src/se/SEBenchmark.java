@@ -0,0 +1,378 @@
+package se;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class measures indexing and search throughput on a synthetic corpus made by
+ * CorpusGenerator. Each benchmark is run for a number of warmup iterations, so that the
+ * JIT compiler settles, and then for a number of measured iterations; the median
+ * iteration is reported, in nanoseconds per operation and operations per second.
+ *
+ * Each operation is measured on one thread and on several. Where the threads share an
+ * engine, they share the documents out; makeIndex and insertLastOccurrence work on data of
+ * their own, so each thread does a whole iteration.
+ *
+ * Usage: SEBenchmark [numDocs [wordsPerDoc [threads [noiseWordsFile]]]]
+ *
+ */
+public class SEBenchmark {
+	
+	/**
+	 * A unit of benchmark work.
+	 */
+	interface Task {
+		/**
+		 * Runs one iteration.
+		 *
+		 * @param sink Results are added to sink[0], so that the JIT compiler can't drop the
+		 *        benchmarked work; each thread has a sink of its own
+		 * @return Number of operations done
+		 */
+		long run(long[] sink) throws Exception;
+	}
+	
+	static final int WARMUPS = 5;
+	static final int ITERATIONS = 10;
+	
+	/**
+	 * Sum of the sinks of all tasks, added to by the measuring thread alone, after the
+	 * workers of an iteration are joined, so that tasks never write a shared field.
+	 */
+	static volatile long results;
+	
+	public static void main(String[] args)
+	throws Exception {
+		int numDocs = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int wordsPerDoc = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		final String noiseFile = args.length > 3 ? args[3] : "noisewords.txt";
+		
+		ArrayList<String> noise = new File(noiseFile).exists()
+				? CorpusGenerator.readNoiseWords(noiseFile) : new ArrayList<String>();
+		final CorpusGenerator gen = new CorpusGenerator(50000, 1.0, noise, 42);
+		File dir = new File(System.getProperty("java.io.tmpdir"), "se-bench-" + numDocs + "x" + wordsPerDoc);
+		final File docsFile = gen.writeCorpus(dir, numDocs, wordsPerDoc);
+		final File noiseWordsFile = new File(dir, "noisewords.txt");
+		writeLines(noiseWordsFile, noise);
+		final ArrayList<String> docNames = readLines(docsFile);
+		System.out.println("corpus: " + numDocs + " docs x ~" + wordsPerDoc + " words in " + dir);
+		
+		Task makeIndex = new Task() {
+			public long run(long[] sink) throws Exception {
+				SearchEngine se = new SearchEngine();
+				se.makeIndex(docsFile.getPath(), noiseWordsFile.getPath());
+				sink[0] += se.keywordsIndex.size();
+				return 1;
+			}
+		};
+		measure("makeIndex", makeIndex);
+		// makeIndex builds one engine on the calling thread, so each thread builds its own
+		measureThreads("makeIndex, " + threads + " threads, own engines", makeIndex, threads);
+		
+		// multi-threaded runs share the documents out through a cursor, reset before each iteration
+		final AtomicInteger cursor = new AtomicInteger();
+		Runnable resetCursor = new Runnable() {
+			public void run() {
+				cursor.set(0);
+			}
+		};
+		
+		final SearchEngine loader = new SearchEngine();
+		loader.loadNoiseWords(noiseWordsFile.getPath());
+		measure("loadKeywordsFromDocument", new Task() {
+			public long run(long[] sink) throws Exception {
+				for (String doc: docNames) {
+					sink[0] += loader.loadKeywordsFromDocument(doc).size();
+				}
+				return docNames.size();
+			}
+		});
+		measureThreads("loadKeywordsFromDocument, " + threads + " threads", resetCursor, new Task() {
+			public long run(long[] sink) throws Exception {
+				long ops = 0;
+				for (int d; (d = cursor.getAndIncrement()) < docNames.size(); ops++) {
+					sink[0] += loader.loadKeywordsFromDocument(docNames.get(d)).size();
+				}
+				return ops;
+			}
+		}, threads);
+		
+		// indexing into one shared engine, the way StreamIndexer's workers do
+		final SearchEngine[] shared = new SearchEngine[1];
+		Runnable newShared = new Runnable() {
+			public void run() {
+				cursor.set(0);
+				shared[0] = new SearchEngine();
+				shared[0].noiseWords.addAll(loader.noiseWords);
+			}
+		};
+		Task index = new Task() {
+			public long run(long[] sink) throws Exception {
+				long ops = 0;
+				for (int d; (d = cursor.getAndIncrement()) < docNames.size(); ops++) {
+					shared[0].mergeKeywords(shared[0].loadKeywordsFromDocument(docNames.get(d)));
+				}
+				return ops;
+			}
+		};
+		measure("load + mergeKeywords", newShared, index);
+		measureThreads("load + mergeKeywords, " + threads + " threads, one engine", newShared, index, threads);
+		
+		final ArrayList<HashMap<String,Occurrence>> allKws = new ArrayList<HashMap<String,Occurrence>>();
+		for (String doc: docNames) {
+			allKws.add(loader.loadKeywordsFromDocument(doc));
+		}
+		measure("mergeKeywords", new Task() {
+			public long run(long[] sink) {
+				SearchEngine se = new SearchEngine();
+				for (HashMap<String,Occurrence> kws: allKws) {
+					se.mergeKeywords(kws);
+				}
+				sink[0] += se.keywordsIndex.size();
+				return allKws.size();
+			}
+		});
+		measureThreads("mergeKeywords, " + threads + " threads, one engine", new Runnable() {
+			public void run() {
+				cursor.set(0);
+				shared[0] = new SearchEngine();
+			}
+		}, new Task() {
+			public long run(long[] sink) {
+				long ops = 0;
+				for (int d; (d = cursor.getAndIncrement()) < allKws.size(); ops++) {
+					shared[0].mergeKeywords(allKws.get(d));
+				}
+				return ops;
+			}
+		}, threads);
+		
+		measure("mergeKeywordsBulk", new Task() {
+			public long run(long[] sink) {
+				HashMap<String,ArrayList<Occurrence>> postings = new HashMap<String,ArrayList<Occurrence>>();
+				for (HashMap<String,Occurrence> kws: allKws) {
+					for (String keyword: kws.keySet()) {
+						ArrayList<Occurrence> occs = postings.get(keyword);
+						if (occs == null) {
+							occs = new ArrayList<Occurrence>();
+							postings.put(keyword, occs);
+						}
+						occs.add(kws.get(keyword));
+					}
+				}
+				SearchEngine se = new SearchEngine();
+				se.mergeKeywordsBulk(postings);
+				sink[0] += se.keywordsIndex.size();
+				return allKws.size();
+			}
+		});
+		
+		// removes every document of an index built, untimed, before each iteration
+		final Runnable buildShared = new Runnable() {
+			public void run() {
+				cursor.set(0);
+				shared[0] = new SearchEngine();
+				for (HashMap<String,Occurrence> kws: allKws) {
+					shared[0].mergeKeywords(kws);
+				}
+			}
+		};
+		Task remove = new Task() {
+			public long run(long[] sink) {
+				long ops = 0;
+				for (int d; (d = cursor.getAndIncrement()) < docNames.size(); ops++) {
+					sink[0] += shared[0].removeDocument(docNames.get(d)) ? 1 : 0;
+				}
+				return ops;
+			}
+		};
+		measure("removeDocument", buildShared, remove);
+		measureThreads("removeDocument, " + threads + " threads", buildShared, remove, threads);
+		
+		final int listSize = Math.max(numDocs, 1000);
+		final Random random = new Random(7);
+		final SearchEngine inserter = new SearchEngine();
+		Task insert = new Task() {
+			public long run(long[] sink) {
+				Random frequencies = new Random(7);
+				ArrayList<Occurrence> occs = new ArrayList<Occurrence>();
+				for (int i = 0; i < listSize; i++) {
+					occs.add(new Occurrence("d", 1 + frequencies.nextInt(100)));
+					inserter.insertLastOccurrence(occs);
+				}
+				sink[0] += occs.get(0).frequency;
+				return listSize;
+			}
+		};
+		measure("insertLastOccurrence (list of " + listSize + ")", insert);
+		// each thread inserts into its own list
+		measureThreads("insertLastOccurrence, " + threads + " threads", insert, threads);
+		
+		final SearchEngine engine = new SearchEngine();
+		engine.makeIndex(docsFile.getPath(), noiseWordsFile.getPath());
+		// query logs are skewed: draw 10000 queries from 1000 distinct pairs, favoring the first ones
+		String[][] pairs = new String[1000][];
+		for (int i = 0; i < pairs.length; i++) {
+			pairs[i] = new String[] { gen.nextWord(), gen.nextWord() };
+		}
+		final String[][] queries = new String[10000][];
+		for (int i = 0; i < queries.length; i++) {
+			queries[i] = pairs[(int) (pairs.length * Math.pow(random.nextDouble(), 3))];
+		}
+		Task search = new Task() {
+			public long run(long[] sink) {
+				for (String[] q: queries) {
+					sink[0] += engine.top5search(q[0], q[1]).size();
+				}
+				return queries.length;
+			}
+		};
+		engine.setQueryCacheSize(0);
+		measure("top5search, no cache, 1 thread", search);
+		measureThreads("top5search, no cache, " + threads + " threads", search, threads);
+		engine.setQueryCacheSize(1024);
+		measure("top5search, cached, 1 thread", search);
+		measureThreads("top5search, cached, " + threads + " threads", search, threads);
+		System.out.printf("query cache hit rate: %.3f%n", engine.getQueryCache().getHitRate());
+		
+		engine.moveIndexOffHeap();
+		engine.setQueryCacheSize(0);
+		measure("top5search, off heap, 1 thread", search);
+		measureThreads("top5search, off heap, " + threads + " threads", search, threads);
+		for (OffHeapIndex part: engine.getOffHeapParts()) {
+			System.out.printf("off-heap part: %d keywords, %d postings, %d bytes%n",
+					part.size(), part.numPostings(), part.offHeapBytes());
+		}
+	}
+	
+	/**
+	 * Runs a task on one thread and prints the median iteration.
+	 */
+	static void measure(String name, Task task)
+	throws Exception {
+		measure(name, null, task);
+	}
+	
+	/**
+	 * Runs a task on one thread and prints the median iteration, running setup, untimed,
+	 * before each iteration.
+	 */
+	static void measure(String name, Runnable setup, Task task)
+	throws Exception {
+		for (int i = 0; i < WARMUPS; i++) {
+			if (setup != null)
+				setup.run();
+			task.run(new long[1]);
+		}
+		long[] sink = new long[1];
+		double[] nsPerOp = new double[ITERATIONS];
+		for (int i = 0; i < ITERATIONS; i++) {
+			if (setup != null)
+				setup.run();
+			long start = System.nanoTime();
+			long ops = task.run(sink);
+			nsPerOp[i] = (double) (System.nanoTime() - start) / ops;
+		}
+		results += sink[0];
+		report(name, nsPerOp);
+	}
+	
+	/**
+	 * Runs a task on several threads at once and prints the median iteration. The time per
+	 * operation is wall time divided by the operations of all threads, so it shows throughput.
+	 */
+	static void measureThreads(String name, final Task task, int threads)
+	throws Exception {
+		measureThreads(name, null, task, threads);
+	}
+	
+	/**
+	 * Runs a task on several threads at once, like measureThreads(name, task, threads),
+	 * running setup, untimed, before each iteration. If the task fails on any thread, the
+	 * measurement is abandoned once all threads have finished, and the failure is thrown.
+	 */
+	static void measureThreads(String name, Runnable setup, final Task task, int threads)
+	throws Exception {
+		double[] nsPerOp = new double[ITERATIONS];
+		for (int i = -WARMUPS; i < ITERATIONS; i++) {
+			if (setup != null)
+				setup.run();
+			final CountDownLatch start = new CountDownLatch(1);
+			final long[] ops = new long[threads];
+			final long[][] sinks = new long[threads][];
+			final Throwable[] failures = new Throwable[threads];
+			Thread[] workers = new Thread[threads];
+			for (int t = 0; t < threads; t++) {
+				final int id = t;
+				workers[t] = new Thread(new Runnable() {
+					public void run() {
+						// allocated by the worker, so that sinks don't share a cache line
+						long[] sink = new long[1];
+						sinks[id] = sink;
+						try {
+							start.await();
+							ops[id] = task.run(sink);
+						} catch (Throwable e) {
+							failures[id] = e;
+						}
+					}
+				});
+				workers[t].start();
+			}
+			long begin = System.nanoTime();
+			start.countDown();
+			for (Thread w: workers) {
+				w.join();
+			}
+			long elapsed = System.nanoTime() - begin;
+			long total = 0, sum = 0;
+			for (int t = 0; t < threads; t++) {
+				if (failures[t] != null)
+					throw new Exception(name + " failed on thread " + t, failures[t]);
+				total += ops[t];
+				sum += sinks[t][0];
+			}
+			results += sum;
+			if (i >= 0)
+				nsPerOp[i] = (double) elapsed / total;
+		}
+		report(name, nsPerOp);
+	}
+	
+	private static void report(String name, double[] nsPerOp) {
+		Arrays.sort(nsPerOp);
+		double median = nsPerOp[nsPerOp.length / 2];
+		System.out.printf("%-45s %14.1f ns/op %14.1f ops/s  (min %.1f, max %.1f)%n",
+				name, median, 1e9 / median, nsPerOp[0], nsPerOp[nsPerOp.length-1]);
+	}
+	
+	private static ArrayList<String> readLines(File file)
+	throws FileNotFoundException {
+		ArrayList<String> lines = new ArrayList<String>();
+		Scanner sc = new Scanner(file);
+		while (sc.hasNext()) {
+			lines.add(sc.next());
+		}
+		sc.close();
+		return lines;
+	}
+	
+	private static void writeLines(File file, ArrayList<String> lines)
+	throws IOException {
+		PrintWriter pw = new PrintWriter(file);
+		for (String line: lines) {
+			pw.println(line);
+		}
+		pw.close();
+	}
+}
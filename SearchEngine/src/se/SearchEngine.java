@@ -1,11 +1,34 @@
 package se;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class builds an index of keywords. Each keyword maps to a set of pages in
  * which it occurs, with frequency of occurrence in each page.
+ * 
+ * Searches may run from any number of threads while documents are being indexed.
+ * Writers (mergeKeywords, removeDocument, makeIndex) are serialized on a lock, and
+ * never modify an occurrence list once it is in the index - they publish an updated
+ * copy instead - so readers never block and always see a fully sorted list. A search
+ * that runs during a merge may see the new document under one keyword and not yet
+ * under the other.
+ * 
+ * To keep a large index out of the garbage collector's way, moveIndexOffHeap moves the
+ * keywords indexed since the last move into a new OffHeapIndex part. Documents indexed
+ * afterwards go to keywordsIndex as before, and searches combine it with the parts. With
+ * setOffHeapThreshold, merging moves keywordsIndex off the heap whenever it grows past a
+ * number of postings, so the heap never holds more than that.
+ * 
+ * Alternatively, setSegmentedIndex makes the engine keep its index in the immutable
+ * segments of a SegmentedIndex, which merges them in the background. keywordsIndex is then
+ * unused, and documents become searchable when their segment is written or on flush.
  *
  */
 public class SearchEngine {
@@ -13,52 +36,322 @@ public class SearchEngine {
 	/**
 	 * This is a hash table of all keywords. The key is the actual keyword, and the associated value is
 	 * an array list of all occurrences of the keyword in documents. The array list is maintained in 
-	 * DESCENDING order of frequencies.
+	 * DESCENDING order of frequencies. Lists in the table are never modified, only replaced.
 	 */
-	HashMap<String,ArrayList<Occurrence>> keywordsIndex;
+	ConcurrentHashMap<String,ArrayList<Occurrence>> keywordsIndex;
 	
 	/**
 	 * The hash set of all noise words.
 	 */
-	HashSet<String> noiseWords;
+	Set<String> noiseWords;
+	
+	/**
+	 * Cache of top5search results, cleared whenever the index changes.
+	 */
+	volatile QueryCache queryCache;
+	
+	/**
+	 * Trie over noiseWords used when scanning documents, rebuilt when the set changes size.
+	 */
+	private volatile NoiseWordTrie noiseTrie;
+	
+	/**
+	 * Receiver of indexing and search measurements.
+	 */
+	private volatile SearchMetrics metrics = SearchMetrics.NONE;
+	
+	/**
+	 * Whether keywords are reduced to their Porter stems.
+	 */
+	private volatile boolean stemming;
+	
+	/**
+	 * Store of keyword offsets for snippets, null if snippets are not kept.
+	 */
+	private volatile DocumentStore documentStore;
+	
+	/**
+	 * Keywords moved off the heap, in parts of decreasing size, oldest first. The list is
+	 * never modified, only replaced.
+	 */
+	private volatile ArrayList<OffHeapIndex> offHeapParts = new ArrayList<OffHeapIndex>();
+	
+	/**
+	 * Number of postings in keywordsIndex, guarded by writeLock.
+	 */
+	private long heapPostings;
+	
+	/**
+	 * Number of postings in keywordsIndex at which merging moves it off the heap, 0 for never.
+	 */
+	private volatile long offHeapThreshold;
+	
+	/**
+	 * Segments that hold the index instead of keywordsIndex, null if not segmented.
+	 */
+	private volatile SegmentedIndex segments;
+	
+	/**
+	 * Keyword extractor of each indexing thread, reused across documents.
+	 */
+	private final ThreadLocal<KeywordExtractor> extractors = new ThreadLocal<KeywordExtractor>();
+	
+	/**
+	 * Number of documents makeIndex merges at a time.
+	 */
+	static final int MAKE_INDEX_BATCH = 256;
+	
+	/**
+	 * Lock held by all methods that change the index.
+	 */
+	private final Object writeLock = new Object();
 	
 	/**
 	 * Creates the keyWordsIndex and noiseWords hash tables.
 	 */
 	public SearchEngine() {
-		keywordsIndex = new HashMap<String,ArrayList<Occurrence>>(1000,2.0f);
-		noiseWords = new HashSet<String>(100,2.0f);
+		keywordsIndex = new ConcurrentHashMap<String,ArrayList<Occurrence>>(1000);
+		noiseWords = ConcurrentHashMap.newKeySet(100);
+		queryCache = new QueryCache(1024);
+	}
+	
+	/**
+	 * Returns the cache of search results, for access to its hit/miss counters.
+	 * 
+	 * @return Query result cache
+	 */
+	public QueryCache getQueryCache() {
+		return queryCache;
+	}
+	
+	/**
+	 * Replaces the query result cache with an empty one of the given size.
+	 * 
+	 * @param capacity Maximum number of cached queries, 0 disables caching
+	 */
+	public void setQueryCacheSize(int capacity) {
+		queryCache = new QueryCache(capacity);
+	}
+	
+	/**
+	 * Sets the receiver of indexing and search measurements, for example a RecordingMetrics.
+	 * 
+	 * @param metrics Metrics receiver, SearchMetrics.NONE to turn measuring off
+	 */
+	public void setMetrics(SearchMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Turns Porter stemming of keywords on or off. With stemming, "running" and "runs" are
+	 * both indexed as "run", and search keywords are stemmed the same way. This must be set
+	 * before any document is indexed.
+	 * 
+	 * @param stemming True to stem keywords
+	 */
+	public void setStemming(boolean stemming) {
+		this.stemming = stemming;
+	}
+	
+	/**
+	 * Sets the store in which loadKeywordsFromDocument records where each keyword occurs, so
+	 * that snippet can show search results without rescanning documents. Only documents
+	 * loaded after this call are stored.
+	 * 
+	 * @param store Document store, null to stop storing offsets
+	 */
+	public void setDocumentStore(DocumentStore store) {
+		this.documentStore = store;
+	}
+	
+	/**
+	 * Moves all of keywordsIndex into a new off-heap part, and leaves keywordsIndex empty.
+	 * Only the postings indexed since the last move are written; the new part is then merged
+	 * with the previous ones while they are no more than twice its size, so there are
+	 * O(log n) parts and each posting is copied O(log n) times. Merging drops the postings of
+	 * removed documents and keywords that no longer occur. Searches return the same results
+	 * as before.
+	 * 
+	 * @throws IllegalStateException If the index is segmented
+	 */
+	public void moveIndexOffHeap() {
+		synchronized (writeLock) {
+			if (segments != null)
+				throw new IllegalStateException("index is segmented");
+			moveOffHeapLocked();
+		}
+	}
+	
+	/**
+	 * Moves keywordsIndex off the heap whenever merging brings it to the given number of
+	 * postings, so that a large index never has to be built on the heap first.
+	 * 
+	 * @param postings Posting count that triggers a move, 0 to move only on moveIndexOffHeap
+	 */
+	public void setOffHeapThreshold(long postings) {
+		offHeapThreshold = postings;
+	}
+	
+	private void moveOffHeapLocked() {
+		if (keywordsIndex.isEmpty())
+			return;
+		ArrayList<OffHeapIndex> parts = new ArrayList<OffHeapIndex>(offHeapParts);
+		parts.add(OffHeapIndex.build(keywordsIndex));
+		while (parts.size() >= 2) {
+			OffHeapIndex older = parts.get(parts.size()-2), newer = parts.get(parts.size()-1);
+			if (older.numPostings() > 2*newer.numPostings())
+				break;
+			parts.remove(parts.size()-1);
+			parts.set(parts.size()-1, OffHeapIndex.merge(older, newer));
+		}
+		// publish before clearing, so that searches always find the postings somewhere
+		offHeapParts = parts;
+		keywordsIndex.clear();
+		heapPostings = 0;
+		queryCache.clear();
+	}
+	
+	/**
+	 * Moves keywordsIndex off the heap if it has reached the threshold.
+	 */
+	private void checkHeapPostings() {
+		long threshold = offHeapThreshold;
+		if (threshold > 0 && heapPostings >= threshold)
+			moveOffHeapLocked();
+	}
+	
+	/**
+	 * Makes the engine index into and search the segments of a SegmentedIndex instead of
+	 * keywordsIndex. Keywords are extracted, normalized, cached and measured as before;
+	 * merging adds each document to the segment index, where it becomes searchable when
+	 * its segment is written, or on flush. This must be set before any document is indexed.
+	 * 
+	 * @param index Segment index, null to go back to keywordsIndex
+	 */
+	public void setSegmentedIndex(SegmentedIndex index) {
+		synchronized (writeLock) {
+			segments = index;
+			queryCache.clear();
+		}
+	}
+	
+	/**
+	 * Makes all documents merged so far searchable. Only the segmented index buffers
+	 * documents; without one this does nothing.
+	 */
+	public void flush() {
+		synchronized (writeLock) {
+			SegmentedIndex segs = segments;
+			if (segs == null)
+				return;
+			segs.flush();
+			queryCache.clear();
+		}
+	}
+	
+	/**
+	 * Returns a snapshot of the off-heap parts of the index, for access to their size.
+	 * 
+	 * @return List of off-heap parts, oldest first; empty if nothing has been moved off the heap
+	 */
+	public ArrayList<OffHeapIndex> getOffHeapParts() {
+		return new ArrayList<OffHeapIndex>(offHeapParts);
 	}
 	
 	/**
 	 * Scans a document, and loads all keywords found into a hash table of keyword occurrences
-	 * in the document. Uses the getKeyWord method to separate keywords from other words.
+	 * in the document. Keywords are separated from other words by the same rules as the
+	 * getKeyword method, applied in a reusable buffer by a KeywordExtractor. The file is read
+	 * as UTF-8. If a document store is set, the offset of every keyword occurrence is
+	 * recorded in it.
 	 * 
 	 * @param docFile Name of the document file to be scanned and loaded
 	 * @return Hash table of keywords in the given document, each associated with an Occurrence object
 	 * @throws FileNotFoundException If the document file is not found on disk
+	 * @throws UncheckedIOException If reading the document file fails
 	 */
 	public HashMap<String,Occurrence> loadKeywordsFromDocument(String docFile) 
 	throws FileNotFoundException {
-		Scanner sc;
-		sc = new Scanner(new File(docFile));
-		
-		HashMap<String,Occurrence> docHash = new HashMap<String,Occurrence>();
-		while (sc.hasNext()) {
-			String newKeyword = getKeyword(sc.next());
-			if (newKeyword == null)
-				continue;		
-			if (docHash.containsKey(newKeyword)) { // if key exists update frequency
-				docHash.get(newKeyword).frequency++; 
-			} else {
-				docHash.put(newKeyword, new Occurrence(docFile, 1));
+		InputStream in = new FileInputStream(docFile);
+		DocumentStore store = documentStore;
+		DocumentStore.Entry offsets = store == null ? null : store.newEntry(docFile);
+		try {
+			long start = System.nanoTime();
+			HashMap<String,Occurrence> docHash = extractor().extract(docFile, in, offsets);
+			metrics.documentScanned(System.nanoTime() - start, docHash.size());
+			if (store != null)
+				store.put(docFile, offsets);
+			return docHash;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// keywords are already loaded
 			}
 		}
-		sc.close();
-		
+	}
+	
+	/**
+	 * Scans a document from an input stream, and loads all keywords found into a hash table
+	 * of keyword occurrences in the document, exactly as loadKeywordsFromDocument does for a
+	 * file. The stream is read as UTF-8 through a fixed-size buffer, so the whole document
+	 * is never held in memory. Malformed UTF-8 is replaced by U+FFFD, as by the other
+	 * loaders, rather than failing the document. The stream is not closed.
+	 * 
+	 * @param docName Name under which the document is indexed
+	 * @param in Stream with the document's contents
+	 * @return Hash table of keywords in the given document, each associated with an Occurrence object
+	 * @throws IOException If reading the stream fails
+	 */
+	public HashMap<String,Occurrence> loadKeywordsFromStream(String docName, InputStream in) 
+	throws IOException {
+		return scan(docName, new InputStreamReader(in, StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Scans a document from a channel, like loadKeywordsFromStream. The channel is not closed.
+	 * 
+	 * @param docName Name under which the document is indexed
+	 * @param ch Channel with the document's contents
+	 * @return Hash table of keywords in the given document, each associated with an Occurrence object
+	 * @throws IOException If reading the channel fails
+	 */
+	public HashMap<String,Occurrence> loadKeywordsFromChannel(String docName, ReadableByteChannel ch) 
+	throws IOException {
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		return scan(docName, Channels.newReader(ch, decoder, -1));
+	}
+	
+	private HashMap<String,Occurrence> scan(String docName, Reader in) 
+	throws IOException {
+		long start = System.nanoTime();
+		HashMap<String,Occurrence> docHash = extractor().extract(docName, in);
+		metrics.documentScanned(System.nanoTime() - start, docHash.size());
 		return docHash;
 	}
 	
+	/**
+	 * Returns this thread's keyword extractor, replacing it if the noise words or the
+	 * stemming setting have changed since it was made.
+	 */
+	private KeywordExtractor extractor() {
+		NoiseWordTrie trie = noiseTrie;
+		if (trie == null || trie.size() != noiseWords.size()) {
+			trie = new NoiseWordTrie(noiseWords);
+			noiseTrie = trie;
+		}
+		KeywordExtractor ex = extractors.get();
+		if (ex == null || ex.noiseWords != trie || (ex.stemmer != null) != stemming) {
+			ex = new KeywordExtractor(trie, stemming);
+			extractors.set(ex);
+		}
+		return ex;
+	}
+	
 	/**
 	 * Merges the keywords for a single document into the master keywordsIndex
 	 * hash table. For each keyword, its Occurrence in the current document
@@ -69,17 +362,36 @@ public class SearchEngine {
 	 * @param kws Keywords hash table for a document
 	 */
 	public void mergeKeywords(HashMap<String,Occurrence> kws) {
-		for (String keyword: kws.keySet()) {
- 			Occurrence keyOccur = kws.get(keyword);
-			if (keywordsIndex.containsKey(keyword)) {
-				keywordsIndex.get(keyword).add(keyOccur);
-				insertLastOccurrence(keywordsIndex.get(keyword));
-			} else {
-				ArrayList<Occurrence> occurList = new ArrayList<Occurrence>();
-				occurList.add(keyOccur);
+		long start = System.nanoTime();
+		synchronized (writeLock) {
+			SegmentedIndex segs = segments;
+			if (segs != null) {
+				if (!kws.isEmpty() && segs.addDocument(kws.values().iterator().next().document, kws))
+					queryCache.clear();
+				metrics.documentMerged(System.nanoTime() - start, kws.size());
+				return;
+			}
+			for (String keyword: kws.keySet()) {
+				Occurrence keyOccur = kws.get(keyword);
+				ArrayList<Occurrence> oldList = keywordsIndex.get(keyword);
+				ArrayList<Occurrence> occurList;
+				if (oldList != null) { // copy, readers may be scanning the old list
+					occurList = new ArrayList<Occurrence>(oldList.size()+1);
+					occurList.addAll(oldList);
+					occurList.add(keyOccur);
+					insertLast(occurList, null);
+				} else {
+					occurList = new ArrayList<Occurrence>();
+					occurList.add(keyOccur);
+				}
 				keywordsIndex.put(keyword, occurList);
 			}
+			heapPostings += kws.size();
+			// clear only after publishing, so that searches that read the old lists can't cache them
+			queryCache.clear();
+			checkHeapPostings();
 		}
+		metrics.documentMerged(System.nanoTime() - start, kws.size());
 	}	
 	
 	/**
@@ -92,6 +404,7 @@ public class SearchEngine {
 	 * 
 	 * @param word Candidate word
 	 * @return Keyword (word without trailing punctuation, LOWER CASE)
+	 *         Not stemmed, even if stemming is on.
 	 */
 	public String getKeyword(String word) {
 		int wordLen = word.length()-1;
@@ -126,10 +439,21 @@ public class SearchEngine {
 	 *         your code - it is not used elsewhere in the program.
 	 */
 	public ArrayList<Integer> insertLastOccurrence(ArrayList<Occurrence> occs) {
-		ArrayList<Integer> midpoints = new ArrayList<Integer>();
 		if (occs.size() <= 1) {
 			return null;
 		}
+		ArrayList<Integer> midpoints = new ArrayList<Integer>();
+		insertLast(occs, midpoints);
+		return midpoints;
+	}
+	
+	/**
+	 * Does the work of insertLastOccurrence, recording midpoints only if a list is given.
+	 */
+	private void insertLast(ArrayList<Occurrence> occs, ArrayList<Integer> midpoints) {
+		if (occs.size() <= 1) {
+			return;
+		}
 		Occurrence lastOccur = occs.get(occs.size()-1);
 		int lastOccurFreq = lastOccur.frequency;
 		occs.remove(occs.size()-1);
@@ -139,7 +463,8 @@ public class SearchEngine {
 	
 		while (left <= right) {
 			mid = (left + right) / 2;
-			midpoints.add(mid);
+			if (midpoints != null)
+				midpoints.add(mid);
 			int midFreq = occs.get(mid).frequency; 
 			
 			if (lastOccurFreq < midFreq)
@@ -148,22 +473,211 @@ public class SearchEngine {
 				right = mid-1;
 			else {
 				occs.add(mid, lastOccur);
-				return midpoints;
+				return;
 			}	
 		}
 		if (occs.get(mid).frequency < lastOccurFreq)
 			occs.add(mid, lastOccur);
 		else
 			occs.add(mid+1, lastOccur);
-		
-		return midpoints;
+	}
+	
+	/**
+	 * Merges the occurrences of many documents into the master keywordsIndex hash table
+	 * at once. Instead of inserting each Occurrence with a binary search, as mergeKeywords
+	 * does, each keyword's new occurrences are sorted once (stably, by a counting sort on
+	 * frequency when frequencies are small) and then merged with the keyword's existing
+	 * list in one pass. A keyword that occurs in D documents thus costs O(D log D) or O(D)
+	 * instead of O(D^2) element moves.
+	 * 
+	 * The resulting lists are in descending order of frequencies, like those built by
+	 * mergeKeywords. Among equal frequencies the later document comes first, as with
+	 * mergeKeywords: documents later in a list come before earlier ones, and new documents
+	 * before the ones already in the index. (mergeKeywords puts a new occurrence before the
+	 * equal one its binary search lands on, which is before all of them unless three or
+	 * more documents share the frequency.)
+	 * 
+	 * With a segmented index, the postings are regrouped by document and each document is
+	 * added to it as mergeKeywords would.
+	 * 
+	 * Metrics see one merged document per distinct document in postings, each with its own
+	 * keyword count and an equal share of the time taken.
+	 * 
+	 * @param postings New occurrences of each keyword, each list in the order the documents
+	 *        were indexed. The lists are sorted in place.
+	 */
+	public void mergeKeywordsBulk(HashMap<String,ArrayList<Occurrence>> postings) {
+		long start = System.nanoTime();
+		if (segments != null) {
+			addDocuments(postings);
+		} else {
+			for (ArrayList<Occurrence> occs: postings.values()) {
+				sortByFrequency(occs);
+			}
+			mergeSorted(postings);
+		}
+		long elapsed = System.nanoTime() - start;
+		SearchMetrics metrics = this.metrics;
+		if (metrics == SearchMetrics.NONE)
+			return;
+		// report each document with its own keyword count and an equal share of the time
+		HashMap<String,Integer> keywordCounts = new HashMap<String,Integer>();
+		for (ArrayList<Occurrence> occs: postings.values()) {
+			for (Occurrence occ: occs) {
+				Integer count = keywordCounts.get(occ.document);
+				keywordCounts.put(occ.document, count == null ? 1 : count+1);
+			}
+		}
+		if (keywordCounts.isEmpty())
+			return;
+		long nanos = elapsed / keywordCounts.size();
+		for (int count: keywordCounts.values()) {
+			metrics.documentMerged(nanos, count);
+		}
+	}
+	
+	/**
+	 * Merges keyword lists sorted by sortByFrequency into keywordsIndex.
+	 */
+	private void mergeSorted(HashMap<String,ArrayList<Occurrence>> postings) {
+		synchronized (writeLock) {
+			for (Map.Entry<String,ArrayList<Occurrence>> entry: postings.entrySet()) {
+				ArrayList<Occurrence> newList = entry.getValue();
+				if (newList.isEmpty())
+					continue;
+				ArrayList<Occurrence> oldList = keywordsIndex.get(entry.getKey());
+				if (oldList == null) {
+					keywordsIndex.put(entry.getKey(), new ArrayList<Occurrence>(newList));
+					continue;
+				}
+				ArrayList<Occurrence> merged = new ArrayList<Occurrence>(oldList.size() + newList.size());
+				int i = 0, j = 0;
+				while (i < oldList.size() && j < newList.size()) {
+					if (oldList.get(i).frequency > newList.get(j).frequency)
+						merged.add(oldList.get(i++));
+					else
+						merged.add(newList.get(j++));
+				}
+				merged.addAll(oldList.subList(i, oldList.size()));
+				merged.addAll(newList.subList(j, newList.size()));
+				keywordsIndex.put(entry.getKey(), merged);
+			}
+			for (ArrayList<Occurrence> occs: postings.values()) {
+				heapPostings += occs.size();
+			}
+			queryCache.clear();
+			checkHeapPostings();
+		}
+	}
+	
+	/**
+	 * Regroups postings by document and adds the documents to the segmented index in an
+	 * order consistent with every list, so that each keyword sees its documents in the
+	 * order they were indexed.
+	 */
+	private void addDocuments(HashMap<String,ArrayList<Occurrence>> postings) {
+		LinkedHashMap<String,HashMap<String,Occurrence>> docs = new LinkedHashMap<String,HashMap<String,Occurrence>>();
+		HashMap<String,ArrayList<String>> next = new HashMap<String,ArrayList<String>>();
+		HashMap<String,Integer> before = new HashMap<String,Integer>();
+		for (Map.Entry<String,ArrayList<Occurrence>> entry: postings.entrySet()) {
+			ArrayList<Occurrence> occs = entry.getValue();
+			for (int i = 0; i < occs.size(); i++) {
+				String doc = occs.get(i).document;
+				HashMap<String,Occurrence> kws = docs.get(doc);
+				if (kws == null) {
+					kws = new HashMap<String,Occurrence>();
+					docs.put(doc, kws);
+					next.put(doc, new ArrayList<String>());
+					before.put(doc, 0);
+				}
+				kws.put(entry.getKey(), occs.get(i));
+				if (i > 0) { // each list is in indexing order
+					next.get(occs.get(i-1).document).add(doc);
+					before.put(doc, before.get(doc)+1);
+				}
+			}
+		}
+		// topological sort: a document goes once all documents listed before it have gone
+		ArrayDeque<String> ready = new ArrayDeque<String>();
+		for (String doc: docs.keySet()) {
+			if (before.get(doc) == 0)
+				ready.add(doc);
+		}
+		ArrayList<String> order = new ArrayList<String>(docs.size());
+		while (!ready.isEmpty()) {
+			String doc = ready.poll();
+			order.add(doc);
+			for (String later: next.get(doc)) {
+				int count = before.get(later)-1;
+				before.put(later, count);
+				if (count == 0)
+					ready.add(later);
+			}
+		}
+		synchronized (writeLock) {
+			SegmentedIndex segs = segments;
+			boolean changed = false;
+			for (String doc: order) {
+				changed |= segs.addDocument(doc, docs.get(doc));
+			}
+			if (changed)
+				queryCache.clear();
+		}
+	}
+	
+	/**
+	 * Sorts occurrences in descending order of frequency, putting equal frequencies in the
+	 * reverse of their original order, so that later documents come first. Uses a counting
+	 * sort when the largest frequency is not much bigger than the list, which is the usual case.
+	 * 
+	 * @param occs List of Occurrences, sorted in place
+	 */
+	static void sortByFrequency(ArrayList<Occurrence> occs) {
+		int n = occs.size();
+		if (n <= 1)
+			return;
+		int max = 0;
+		for (int i = 0; i < n; i++) {
+			max = Math.max(max, occs.get(i).frequency);
+		}
+		if (n < 32 || max > 4*n) {
+			Collections.reverse(occs); // the sort is stable
+			Collections.sort(occs, new Comparator<Occurrence>() {
+				public int compare(Occurrence o1, Occurrence o2) {
+					return Integer.compare(o2.frequency, o1.frequency);
+				}
+			});
+			return;
+		}
+		// slot[f] = first position of frequency f, highest frequencies first
+		int[] slot = new int[max+2];
+		for (int i = 0; i < n; i++) {
+			slot[occs.get(i).frequency]++;
+		}
+		int pos = 0;
+		for (int f = max; f >= 0; f--) {
+			int count = slot[f];
+			slot[f] = pos;
+			pos += count;
+		}
+		Occurrence[] sorted = new Occurrence[n];
+		for (int i = n-1; i >= 0; i--) {
+			Occurrence o = occs.get(i);
+			sorted[slot[o.frequency]++] = o;
+		}
+		for (int i = 0; i < n; i++) {
+			occs.set(i, sorted[i]);
+		}
 	}
 	
 	/**
 	 * This method indexes all keywords found in all the input documents. When this
 	 * method is done, the keywordsIndex hash table will be filled with all keywords,
 	 * each of which is associated with an array list of Occurrence objects, arranged
-	 * in decreasing frequencies of occurrence.
+	 * in decreasing frequencies of occurrence. The occurrences of every MAKE_INDEX_BATCH
+	 * documents are collected and merged in one go by mergeKeywordsBulk, so documents
+	 * become searchable a batch at a time, and the collected occurrences never hold more
+	 * than one batch. With a segmented index, all documents are searchable once this returns.
 	 * 
 	 * @param docsFile Name of file that has a list of all the document file names, one name per line
 	 * @param noiseWordsFile Name of file that has a list of noise words, one noise word per line
@@ -172,22 +686,190 @@ public class SearchEngine {
 	public void makeIndex(String docsFile, String noiseWordsFile) 
 	throws FileNotFoundException {
 		// load noise words to hash table
-		Scanner sc = new Scanner(new File(noiseWordsFile));
-		while (sc.hasNext()) {
-			String word = sc.next();
-			noiseWords.add(word);
-		}
+		loadNoiseWords(noiseWordsFile);
 		
 		// index all keywords
-		sc = new Scanner(new File(docsFile));
+		HashMap<String,ArrayList<Occurrence>> postings = new HashMap<String,ArrayList<Occurrence>>(1000);
+		Scanner sc = new Scanner(new File(docsFile));
+		int batched = 0;
 		while (sc.hasNext()) {
+			if (batched == MAKE_INDEX_BATCH) {
+				mergeKeywordsBulk(postings);
+				postings = new HashMap<String,ArrayList<Occurrence>>(1000);
+				batched = 0;
+			}
+			batched++;
 			String docFile = sc.next();
 			HashMap<String,Occurrence> kws = loadKeywordsFromDocument(docFile);
-			mergeKeywords(kws);
+			for (Map.Entry<String,Occurrence> entry: kws.entrySet()) {
+				ArrayList<Occurrence> occs = postings.get(entry.getKey());
+				if (occs == null) {
+					occs = new ArrayList<Occurrence>();
+					postings.put(entry.getKey(), occs);
+				}
+				occs.add(entry.getValue());
+			}
+		}
+		sc.close();
+		mergeKeywordsBulk(postings);
+		flush();
+	}
+	
+	/**
+	 * Adds the words in a file to the set of noise words. makeIndex does this itself;
+	 * this method is for indexing documents one at a time, as with StreamIndexer.
+	 * 
+	 * @param noiseWordsFile Name of file that has a list of noise words, one noise word per line
+	 * @throws FileNotFoundException If the file is not found on disk
+	 */
+	public void loadNoiseWords(String noiseWordsFile) 
+	throws FileNotFoundException {
+		Scanner sc = new Scanner(new File(noiseWordsFile));
+		synchronized (writeLock) {
+			while (sc.hasNext()) {
+				String word = sc.next();
+				noiseWords.add(word);
+			}
 		}
 		sc.close();
 	}
 	
+	/**
+	 * Removes all occurrences of a document from the index. Keywords that no longer
+	 * occur in any document are dropped.
+	 * 
+	 * @param docFile Name of the document file, as it was indexed
+	 * @return True if the document was in the index, false otherwise
+	 */
+	public boolean removeDocument(String docFile) {
+		synchronized (writeLock) {
+			SegmentedIndex segs = segments;
+			if (segs != null) {
+				boolean removed = segs.deleteDocument(docFile);
+				if (removed)
+					queryCache.clear();
+				DocumentStore store = documentStore;
+				if (store != null)
+					store.remove(docFile);
+				return removed;
+			}
+			boolean removed = false;
+			for (Map.Entry<String,ArrayList<Occurrence>> entry: keywordsIndex.entrySet()) {
+				ArrayList<Occurrence> occs = entry.getValue();
+				for (int i = 0; i < occs.size(); i++) {
+					if (occs.get(i).document.equals(docFile)) {
+						heapPostings--;
+						if (occs.size() == 1) {
+							keywordsIndex.remove(entry.getKey());
+						} else {
+							ArrayList<Occurrence> newList = new ArrayList<Occurrence>(occs);
+							newList.remove(i);
+							entry.setValue(newList);
+						}
+						removed = true;
+						break; // a document occurs at most once per keyword
+					}
+				}
+			}
+			for (OffHeapIndex part: offHeapParts) {
+				if (part.delete(docFile))
+					removed = true;
+			}
+			if (removed)
+				queryCache.clear();
+			DocumentStore store = documentStore;
+			if (store != null)
+				store.remove(docFile);
+			return removed;
+		}
+	}
+	
+	/**
+	 * Normalizes a search keyword to the form keywords are indexed in.
+	 */
+	private String normalizeQuery(String kw) {
+		kw = kw.toLowerCase();
+		if (!stemming)
+			return kw;
+		char[] buf = new char[kw.length()+1];
+		kw.getChars(0, kw.length(), buf, 0);
+		return new String(buf, 0, new PorterStemmer().stem(buf, kw.length()));
+	}
+	
+	/**
+	 * Returns the occurrence list of a keyword for top5search. With a segmented index, or when
+	 * part of the index is off the heap, only the first 5 occurrences of the combined list are
+	 * returned, which is all top5search needs: it has 5 distinct documents once it has used 5
+	 * entries of one list. Among equal frequencies keywordsIndex comes first, then the parts
+	 * from newest to oldest, so that later documents come first as in a single list.
+	 * 
+	 * moveOffHeapLocked publishes a new part before it clears keywordsIndex, and the clear is
+	 * not atomic, so a search may find the same document in both. Such a document is taken
+	 * only once, so that the 5 entries are 5 documents.
+	 */
+	private ArrayList<Occurrence> postings(String kw) {
+		SegmentedIndex segs = segments;
+		if (segs != null)
+			return segs.occurrences(kw, 5);
+		ArrayList<Occurrence> occs = keywordsIndex.get(kw);
+		ArrayList<OffHeapIndex> parts = offHeapParts;
+		if (parts.isEmpty())
+			return occs;
+		ArrayList<ArrayList<Occurrence>> lists = new ArrayList<ArrayList<Occurrence>>(parts.size()+1);
+		if (occs != null)
+			lists.add(occs);
+		for (int p = parts.size()-1; p >= 0; p--) {
+			lists.add(parts.get(p).occurrences(kw, 5));
+		}
+		ArrayList<Occurrence> merged = new ArrayList<Occurrence>(5);
+		int[] pos = new int[lists.size()];
+		while (merged.size() < 5) {
+			int best = -1;
+			for (int l = 0; l < lists.size(); l++) {
+				if (pos[l] < lists.get(l).size() && (best == -1
+						|| lists.get(l).get(pos[l]).frequency > lists.get(best).get(pos[best]).frequency))
+					best = l;
+			}
+			if (best == -1)
+				break;
+			Occurrence occ = lists.get(best).get(pos[best]++);
+			if (!inFirst(merged, merged.size(), occ.document))
+				merged.add(occ);
+		}
+		return merged;
+	}
+	
+	/**
+	 * Tells if a document is among the first n occurrences of a list.
+	 */
+	private static boolean inFirst(ArrayList<Occurrence> occs, int n, String document) {
+		for (int k = 0; k < n; k++) {
+			if (occs.get(k).document.equals(document))
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Makes a snippet of a document showing where either keyword occurs, with each occurrence
+	 * highlighted. The keywords are matched the same way top5search matches them. Reads only
+	 * the snippet's bytes from the document file.
+	 * 
+	 * @param docFile Name of the document file, as it was indexed
+	 * @param kw1 First keyword
+	 * @param kw2 Second keyword
+	 * @return Snippet, or null if no document store is set, the document was not stored, or
+	 *         neither keyword occurs in it
+	 * @throws IOException If the document file cannot be read
+	 */
+	public String snippet(String docFile, String kw1, String kw2)
+	throws IOException {
+		DocumentStore store = documentStore;
+		if (store == null)
+			return null;
+		return store.snippet(docFile, normalizeQuery(kw1), normalizeQuery(kw2));
+	}
+	
 	/**
 	 * Search result for "kw1 or kw2". A document is in the result set if kw1 or kw2 occurs in that
 	 * document. Result set is arranged in descending order of document frequencies. (Note that a
@@ -195,6 +877,8 @@ public class SearchEngine {
 	 * in favor of the first keyword. (That is, if kw1 is in doc1 with frequency f1, and kw2 is in doc2
 	 * also with the same frequency f1, then doc1 will take precedence over doc2 in the result. 
 	 * The result set is limited to 5 entries. If there are no matches at all, result is null.
+	 * Keywords are matched case-insensitively (and by stem, if stemming is on), and repeated queries are answered from the
+	 * query result cache.
 	 * 
 	 * @param kw1 First keyword
 	 * @param kw1 Second keyword
@@ -202,9 +886,28 @@ public class SearchEngine {
 	 *         frequencies. The result size is limited to 5 documents. If there are no matches, returns null.
 	 */
 	public ArrayList<String> top5search(String kw1, String kw2) {
+		long start = System.nanoTime();
+		SearchMetrics metrics = this.metrics;
+		kw1 = normalizeQuery(kw1);
+		kw2 = normalizeQuery(kw2);
+		QueryCache cache = queryCache;
+		String cacheKey = QueryCache.key(kw1, kw2);
+		long generation = cache.generation();
+		ArrayList<String> cached = cache.get(cacheKey);
+		if (cached != null) {
+			metrics.searched(System.nanoTime() - start, true);
+			return new ArrayList<String>(cached);
+		}
+		
 		ArrayList<Occurrence> kw1List, kw2List;
-		kw1List = keywordsIndex.containsKey(kw1) ? keywordsIndex.get(kw1) : new ArrayList<Occurrence>();
-		kw2List = keywordsIndex.containsKey(kw2) ? keywordsIndex.get(kw2) : new ArrayList<Occurrence>();
+		kw1List = postings(kw1);
+		kw2List = postings(kw2);
+		if (kw1List == null)
+			kw1List = new ArrayList<Occurrence>();
+		if (kw2List == null)
+			kw2List = new ArrayList<Occurrence>();
+		metrics.postingListScanned(kw1List.size());
+		metrics.postingListScanned(kw2List.size());
 		ArrayList<String> top5List = new ArrayList<String>();
 		
 		int kw1Index = 0, kw2Index = 0;
@@ -241,6 +944,8 @@ public class SearchEngine {
 		while (top5List.size() > 5) {
 			top5List.remove(top5List.size()-1);
 		}
+		cache.put(cacheKey, top5List, generation);
+		metrics.searched(System.nanoTime() - start, false);
 		return top5List;
 	}
 }
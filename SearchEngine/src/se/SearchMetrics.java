@@ -0,0 +1,51 @@
+package se;
+
+/**
+ * This interface receives measurements from a SearchEngine. The engine calls it on the
+ * indexing and search paths, so implementations must be thread safe and cheap. The
+ * default, NONE, ignores everything; RecordingMetrics keeps counters and histograms.
+ *
+ */
+public interface SearchMetrics {
+	
+	/**
+	 * Metrics that ignore all measurements.
+	 */
+	SearchMetrics NONE = new SearchMetrics() {
+		public void documentScanned(long nanos, int keywords) { }
+		public void documentMerged(long nanos, int keywords) { }
+		public void searched(long nanos, boolean cacheHit) { }
+		public void postingListScanned(int length) { }
+	};
+	
+	/**
+	 * Called after a document has been scanned for keywords.
+	 *
+	 * @param nanos Time taken to scan (tokenize) the document
+	 * @param keywords Number of distinct keywords found
+	 */
+	void documentScanned(long nanos, int keywords);
+	
+	/**
+	 * Called after a document's keywords have been merged into the index.
+	 *
+	 * @param nanos Time taken by the merge, including waiting for the write lock
+	 * @param keywords Number of keywords merged
+	 */
+	void documentMerged(long nanos, int keywords);
+	
+	/**
+	 * Called after a search.
+	 *
+	 * @param nanos Time taken by the search
+	 * @param cacheHit True if the result came from the query cache
+	 */
+	void searched(long nanos, boolean cacheHit);
+	
+	/**
+	 * Called for each occurrence list a search had to merge.
+	 *
+	 * @param length Length of the list
+	 */
+	void postingListScanned(int length);
+}
@@ -0,0 +1,200 @@
+package se;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class encapsulates an immutable slice of the keyword index, covering a fixed set
+ * of documents. Each document is identified within the segment by its ordinal, the position
+ * of its name in the documents array. The occurrences of a keyword are stored as a single
+ * int array of (ordinal, frequency) pairs, in DESCENDING order of frequencies.
+ *
+ * Documents are deleted by marking their ordinal in a deletion bitmap. Since a segment
+ * never changes, deleting returns a new segment that shares everything except the bitmap.
+ *
+ */
+public class Segment {
+	
+	/**
+	 * Unique id of this segment. Copies made by delete keep the id of the original.
+	 */
+	final long id;
+	
+	/**
+	 * Names of the documents in this segment, indexed by ordinal.
+	 */
+	final String[] documents;
+	
+	/**
+	 * Ordinal of each document name.
+	 */
+	final HashMap<String,Integer> ordinals;
+	
+	/**
+	 * Occurrences of each keyword, as (ordinal, frequency) pairs in descending order of frequency.
+	 */
+	final HashMap<String,int[]> postings;
+	
+	/**
+	 * Ordinals of deleted documents.
+	 */
+	final BitSet deleted;
+	
+	/**
+	 * Number of documents that are not deleted.
+	 */
+	final int liveDocs;
+	
+	private Segment(long id, String[] documents, HashMap<String,Integer> ordinals,
+			HashMap<String,int[]> postings, BitSet deleted) {
+		this.id = id;
+		this.documents = documents;
+		this.ordinals = ordinals;
+		this.postings = postings;
+		this.deleted = deleted;
+		this.liveDocs = documents.length - deleted.cardinality();
+	}
+	
+	/**
+	 * Builds a segment from an in-memory index of the given documents. The occurrence lists
+	 * must already be in descending order of frequency.
+	 *
+	 * @param id Segment id
+	 * @param documents Names of the documents in the segment
+	 * @param index Keyword index over those documents
+	 * @return New segment
+	 */
+	static Segment build(long id, ArrayList<String> documents, HashMap<String,ArrayList<Occurrence>> index) {
+		String[] docs = documents.toArray(new String[documents.size()]);
+		HashMap<String,Integer> ordinals = new HashMap<String,Integer>(docs.length*2);
+		for (int i = 0; i < docs.length; i++) {
+			ordinals.put(docs[i], i);
+		}
+		HashMap<String,int[]> postings = new HashMap<String,int[]>(index.size()*2);
+		for (Map.Entry<String,ArrayList<Occurrence>> entry: index.entrySet()) {
+			ArrayList<Occurrence> occs = entry.getValue();
+			int[] pairs = new int[occs.size()*2];
+			for (int i = 0; i < occs.size(); i++) {
+				pairs[2*i] = ordinals.get(occs.get(i).document);
+				pairs[2*i+1] = occs.get(i).frequency;
+			}
+			postings.put(entry.getKey(), pairs);
+		}
+		return new Segment(id, docs, ordinals, postings, new BitSet(docs.length));
+	}
+	
+	/**
+	 * Merges several segments into one, leaving out deleted documents. Sources are given
+	 * oldest first, and among equal frequencies the occurrences of a later source come
+	 * first, as newer documents do in a list built by SearchEngine.
+	 *
+	 * @param id Id of the merged segment
+	 * @param sources Segments to merge
+	 * @return Merged segment
+	 */
+	static Segment merge(long id, ArrayList<Segment> sources) {
+		// assign new ordinals to live documents, -1 marks a dropped document
+		int[][] remap = new int[sources.size()][];
+		ArrayList<String> docs = new ArrayList<String>();
+		for (int s = 0; s < sources.size(); s++) {
+			Segment seg = sources.get(s);
+			remap[s] = new int[seg.documents.length];
+			for (int i = 0; i < seg.documents.length; i++) {
+				if (seg.deleted.get(i)) {
+					remap[s][i] = -1;
+				} else {
+					remap[s][i] = docs.size();
+					docs.add(seg.documents[i]);
+				}
+			}
+		}
+		String[] documents = docs.toArray(new String[docs.size()]);
+		HashMap<String,Integer> ordinals = new HashMap<String,Integer>(documents.length*2);
+		for (int i = 0; i < documents.length; i++) {
+			ordinals.put(documents[i], i);
+		}
+		
+		HashMap<String,int[]> postings = new HashMap<String,int[]>();
+		for (int s = 0; s < sources.size(); s++) {
+			for (String keyword: sources.get(s).postings.keySet()) {
+				if (postings.containsKey(keyword))
+					continue;
+				int[] merged = mergePostings(sources, remap, keyword);
+				if (merged.length > 0)
+					postings.put(keyword, merged);
+			}
+		}
+		return new Segment(id, documents, ordinals, postings, new BitSet(documents.length));
+	}
+	
+	private static int[] mergePostings(ArrayList<Segment> sources, int[][] remap, String keyword) {
+		int[][] lists = new int[sources.size()][];
+		int total = 0;
+		for (int s = 0; s < sources.size(); s++) {
+			lists[s] = sources.get(s).postings.get(keyword);
+			if (lists[s] != null)
+				total += lists[s].length;
+		}
+		int[] merged = new int[total];
+		int[] pos = new int[sources.size()];
+		int size = 0;
+		while (true) {
+			// pick the highest frequency among list heads, latest segment wins ties
+			int best = -1;
+			for (int s = 0; s < lists.length; s++) {
+				if (lists[s] == null)
+					continue;
+				while (pos[s] < lists[s].length && remap[s][lists[s][pos[s]]] == -1)
+					pos[s] += 2; // skip deleted documents
+				if (pos[s] < lists[s].length
+						&& (best == -1 || lists[s][pos[s]+1] >= lists[best][pos[best]+1]))
+					best = s;
+			}
+			if (best == -1)
+				break;
+			merged[size++] = remap[best][lists[best][pos[best]]];
+			merged[size++] = lists[best][pos[best]+1];
+			pos[best] += 2;
+		}
+		if (size == merged.length)
+			return merged;
+		int[] trimmed = new int[size];
+		System.arraycopy(merged, 0, trimmed, 0, size);
+		return trimmed;
+	}
+	
+	/**
+	 * Returns a copy of this segment with the given document marked as deleted.
+	 *
+	 * @param document Document name
+	 * @return Segment with the document deleted, or this segment if it does not hold
+	 *         a live copy of the document
+	 */
+	Segment delete(String document) {
+		Integer ord = ordinals.get(document);
+		if (ord == null || deleted.get(ord))
+			return this;
+		BitSet newDeleted = (BitSet) deleted.clone();
+		newDeleted.set(ord);
+		return new Segment(id, documents, ordinals, postings, newDeleted);
+	}
+	
+	/**
+	 * Returns the number of documents in this segment, including deleted ones.
+	 *
+	 * @return Document count
+	 */
+	public int size() {
+		return documents.length;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "segment" + id + "(" + liveDocs + "/" + documents.length + " docs, "
+				+ postings.size() + " keywords)";
+	}
+}
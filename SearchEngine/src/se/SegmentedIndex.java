@@ -0,0 +1,408 @@
+package se;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class builds a keyword index out of immutable segments, in the manner of
+ * log-structured search engines. Newly added documents are buffered in memory and
+ * written out as a small segment once the buffer is full (or flush is called); only
+ * then do they become visible to searches. A background thread merges segments of
+ * similar size once there are mergeFactor of them, so that each document is rewritten
+ * about log(N) times in total, and drops deleted documents while doing so.
+ *
+ * A SearchEngine indexes into a SegmentedIndex once it is given one with
+ * setSegmentedIndex; its top5search then reads the segments through occurrences, with
+ * the engine's usual keyword normalization, query cache and metrics. Reads run against a
+ * snapshot of the segment list and never block. All other methods are serialized on a lock.
+ *
+ * Documents to add are tokenized by the caller, typically with
+ * SearchEngine.loadKeywordsFromDocument.
+ *
+ */
+public class SegmentedIndex {
+	
+	/**
+	 * Published segments, oldest first. The list is never modified, only replaced.
+	 */
+	private volatile ArrayList<Segment> segments;
+	
+	/**
+	 * Names of buffered documents, in order of addition.
+	 */
+	private ArrayList<String> bufferedDocs;
+	
+	/**
+	 * Keyword index over the buffered documents. Occurrence lists are unsorted.
+	 */
+	private HashMap<String,ArrayList<Occurrence>> buffer;
+	
+	/**
+	 * Number of documents buffered before a segment is written.
+	 */
+	private final int maxBufferedDocs;
+	
+	/**
+	 * Number of segments of one size tier that are merged together.
+	 */
+	private final int mergeFactor;
+	
+	/**
+	 * Id for the next segment.
+	 */
+	private long nextId;
+	
+	/**
+	 * Thread that runs merges.
+	 */
+	private final ExecutorService merger;
+	
+	private final Object lock = new Object();
+	
+	/**
+	 * Initializes an empty index that writes a segment every 100 documents and merges
+	 * 10 segments at a time.
+	 */
+	public SegmentedIndex() {
+		this(100, 10);
+	}
+	
+	/**
+	 * Initializes an empty index.
+	 *
+	 * @param maxBufferedDocs Number of documents buffered before a segment is written
+	 * @param mergeFactor Number of segments of one size tier that are merged together, at least 2
+	 */
+	public SegmentedIndex(int maxBufferedDocs, int mergeFactor) {
+		if (maxBufferedDocs < 1 || mergeFactor < 2) {
+			throw new IllegalArgumentException("maxBufferedDocs must be >= 1 and mergeFactor >= 2");
+		}
+		this.maxBufferedDocs = maxBufferedDocs;
+		this.mergeFactor = mergeFactor;
+		segments = new ArrayList<Segment>();
+		bufferedDocs = new ArrayList<String>();
+		buffer = new HashMap<String,ArrayList<Occurrence>>();
+		nextId = 0;
+		merger = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "segment-merger");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	
+	/**
+	 * Adds a document to the index, replacing any earlier version of a document with the
+	 * same name. The document becomes searchable when its segment is written.
+	 *
+	 * @param docFile Document name
+	 * @param kws Keywords hash table for the document, as returned by loadKeywordsFromDocument
+	 * @return True if the searchable documents changed: a segment was written, or an
+	 *         earlier version of the document was deleted
+	 */
+	public boolean addDocument(String docFile, HashMap<String,Occurrence> kws) {
+		synchronized (lock) {
+			boolean changed = deleteLocked(docFile);
+			bufferedDocs.add(docFile);
+			for (String keyword: kws.keySet()) {
+				ArrayList<Occurrence> occs = buffer.get(keyword);
+				if (occs == null) {
+					occs = new ArrayList<Occurrence>();
+					buffer.put(keyword, occs);
+				}
+				occs.add(new Occurrence(docFile, kws.get(keyword).frequency));
+			}
+			if (bufferedDocs.size() >= maxBufferedDocs) {
+				flushLocked();
+				changed = true;
+			}
+			return changed;
+		}
+	}
+	
+	/**
+	 * Deletes a document from the index. The space it takes is reclaimed when its
+	 * segment is next merged.
+	 *
+	 * @param docFile Document name
+	 * @return True if the document was in the index, false otherwise
+	 */
+	public boolean deleteDocument(String docFile) {
+		synchronized (lock) {
+			return deleteLocked(docFile);
+		}
+	}
+	
+	/**
+	 * Writes all buffered documents to a new segment, making them searchable.
+	 */
+	public void flush() {
+		synchronized (lock) {
+			flushLocked();
+		}
+	}
+	
+	/**
+	 * Waits until all merges that have been scheduled so far are done.
+	 *
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public void awaitMerges()
+	throws InterruptedException {
+		try {
+			merger.submit(new Runnable() {
+				public void run() { }
+			}).get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+	
+	/**
+	 * Stops the merge thread. Merges in progress are finished, the index stays searchable.
+	 */
+	public void close() {
+		merger.shutdown();
+	}
+	
+	/**
+	 * Returns a snapshot of the current segments, oldest first.
+	 *
+	 * @return List of segments
+	 */
+	public ArrayList<Segment> getSegments() {
+		return new ArrayList<Segment>(segments);
+	}
+	
+	/**
+	 * Returns the number of searchable documents.
+	 *
+	 * @return Number of live documents in all segments
+	 */
+	public int numDocs() {
+		int count = 0;
+		for (Segment seg: segments) {
+			count += seg.liveDocs;
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns the first occurrences of a keyword across all segments, in descending order
+	 * of frequency, skipping deleted documents. Occurrence lists of the segments are merged
+	 * lazily, so only max occurrences are visited. Among equal frequencies the newer segment
+	 * comes first, as newer documents do in SearchEngine's own lists.
+	 *
+	 * @param keyword Keyword, as indexed
+	 * @param max Maximum number of occurrences to return
+	 * @return Up to max occurrences; empty if the keyword is in no segment
+	 */
+	public ArrayList<Occurrence> occurrences(String keyword, int max) {
+		PostingCursor cursor = new PostingCursor(segments, keyword);
+		ArrayList<Occurrence> occs = new ArrayList<Occurrence>();
+		while (occs.size() < max && cursor.next()) {
+			occs.add(new Occurrence(cursor.document, cursor.frequency));
+		}
+		return occs;
+	}
+	
+	private boolean deleteLocked(String docFile) {
+		boolean removed = false;
+		int bufferedAt = bufferedDocs.indexOf(docFile);
+		if (bufferedAt != -1) {
+			bufferedDocs.remove(bufferedAt);
+			for (ArrayList<Occurrence> occs: buffer.values()) {
+				for (int i = 0; i < occs.size(); i++) {
+					if (occs.get(i).document.equals(docFile)) {
+						occs.remove(i);
+						break;
+					}
+				}
+			}
+			removed = true;
+		}
+		ArrayList<Segment> newSegments = null;
+		for (int i = 0; i < segments.size(); i++) {
+			Segment seg = segments.get(i);
+			Segment updated = seg.delete(docFile);
+			if (updated != seg) {
+				if (newSegments == null)
+					newSegments = new ArrayList<Segment>(segments);
+				newSegments.set(i, updated);
+			}
+		}
+		if (newSegments != null) {
+			segments = newSegments;
+			scheduleMerge();
+			removed = true;
+		}
+		return removed;
+	}
+	
+	private void flushLocked() {
+		if (bufferedDocs.isEmpty())
+			return;
+		// sort each list once, instead of once per added document
+		HashMap<String,ArrayList<Occurrence>> sorted = new HashMap<String,ArrayList<Occurrence>>(buffer.size()*2);
+		for (String keyword: buffer.keySet()) {
+			ArrayList<Occurrence> occs = buffer.get(keyword);
+			if (occs.isEmpty())
+				continue;
+			SearchEngine.sortByFrequency(occs);
+			sorted.put(keyword, occs);
+		}
+		Segment seg = Segment.build(nextId++, bufferedDocs, sorted);
+		ArrayList<Segment> newSegments = new ArrayList<Segment>(segments);
+		newSegments.add(seg);
+		segments = newSegments;
+		bufferedDocs = new ArrayList<String>();
+		buffer = new HashMap<String,ArrayList<Occurrence>>();
+		scheduleMerge();
+	}
+	
+	private void scheduleMerge() {
+		if (merger.isShutdown())
+			return;
+		merger.execute(new Runnable() {
+			public void run() {
+				mergeAll();
+			}
+		});
+	}
+	
+	/**
+	 * Runs on the merge thread: keeps merging while the merge policy finds work.
+	 */
+	private void mergeAll() {
+		while (true) {
+			ArrayList<Segment> sources = findMerge(segments);
+			if (sources == null)
+				return;
+			long id;
+			synchronized (lock) {
+				id = nextId++;
+			}
+			Segment merged = Segment.merge(id, sources);
+			synchronized (lock) {
+				commitMerge(sources, merged);
+			}
+		}
+	}
+	
+	/**
+	 * Tiered merge policy. A segment's tier is the number of times it would have to grow
+	 * by mergeFactor to reach its live size, starting from one buffer's worth of documents.
+	 * The smallest tier that holds mergeFactor segments is merged. A segment in which most
+	 * documents are deleted is merged on its own, to reclaim space.
+	 *
+	 * @param current Current segments
+	 * @return Segments to merge, or null if no merge is needed
+	 */
+	private ArrayList<Segment> findMerge(ArrayList<Segment> current) {
+		HashMap<Integer,ArrayList<Segment>> tiers = new HashMap<Integer,ArrayList<Segment>>();
+		int mergeTier = Integer.MAX_VALUE;
+		for (Segment seg: current) {
+			if (seg.liveDocs * 2 < seg.size()) {
+				ArrayList<Segment> single = new ArrayList<Segment>(1);
+				single.add(seg);
+				return single;
+			}
+			int tier = 0;
+			for (long cap = (long) maxBufferedDocs * mergeFactor; seg.liveDocs >= cap; cap *= mergeFactor) {
+				tier++;
+			}
+			ArrayList<Segment> list = tiers.get(tier);
+			if (list == null) {
+				list = new ArrayList<Segment>();
+				tiers.put(tier, list);
+			}
+			list.add(seg);
+			if (list.size() >= mergeFactor)
+				mergeTier = Math.min(mergeTier, tier);
+		}
+		if (mergeTier == Integer.MAX_VALUE)
+			return null;
+		return new ArrayList<Segment>(tiers.get(mergeTier).subList(0, mergeFactor));
+	}
+	
+	/**
+	 * Replaces the merged segments by the result of the merge. Documents that were deleted
+	 * from the sources while the merge ran are deleted from the result.
+	 */
+	private void commitMerge(ArrayList<Segment> sources, Segment merged) {
+		HashMap<Long,Segment> sourceIds = new HashMap<Long,Segment>();
+		for (Segment seg: sources) {
+			sourceIds.put(seg.id, seg);
+		}
+		ArrayList<Segment> newSegments = new ArrayList<Segment>(segments.size());
+		boolean placed = false;
+		for (Segment seg: segments) {
+			Segment before = sourceIds.get(seg.id);
+			if (before == null) {
+				newSegments.add(seg);
+				continue;
+			}
+			for (int i = seg.deleted.nextSetBit(0); i >= 0; i = seg.deleted.nextSetBit(i+1)) {
+				if (!before.deleted.get(i))
+					merged = merged.delete(seg.documents[i]);
+			}
+			if (!placed) {
+				newSegments.add(null); // merged segment goes where its first source was
+				placed = true;
+			}
+		}
+		newSegments.set(newSegments.indexOf(null), merged);
+		segments = newSegments;
+	}
+	
+	/**
+	 * Lazily merges the occurrence lists of one keyword across all segments, skipping
+	 * deleted documents. Ties in frequency go to the newer segment.
+	 */
+	private static class PostingCursor {
+		ArrayList<Segment> segs;
+		int[][] lists;
+		int[] pos;
+		String document;
+		int frequency;
+		
+		PostingCursor(ArrayList<Segment> segs, String keyword) {
+			this.segs = segs;
+			lists = new int[segs.size()][];
+			pos = new int[segs.size()];
+			for (int s = 0; s < lists.length; s++) {
+				lists[s] = segs.get(s).postings.get(keyword);
+			}
+		}
+		
+		/**
+		 * Moves to the next occurrence.
+		 *
+		 * @return True if there is one, false if all lists are exhausted
+		 */
+		boolean next() {
+			int best = -1;
+			for (int s = 0; s < lists.length; s++) {
+				int[] list = lists[s];
+				if (list == null)
+					continue;
+				while (pos[s] < list.length && segs.get(s).deleted.get(list[pos[s]]))
+					pos[s] += 2;
+				if (pos[s] < list.length
+						&& (best == -1 || list[pos[s]+1] >= lists[best][pos[best]+1]))
+					best = s;
+			}
+			if (best == -1)
+				return false;
+			document = segs.get(best).documents[lists[best][pos[best]]];
+			frequency = lists[best][pos[best]+1];
+			pos[best] += 2;
+			return true;
+		}
+	}
+}
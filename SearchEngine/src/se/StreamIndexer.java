@@ -0,0 +1,168 @@
+package se;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * This class indexes documents into a SearchEngine as they arrive, without spooling them
+ * to files first. Producers submit (document name, content stream) records; a fixed
+ * number of worker threads scan them with loadKeywordsFromStream and merge the keywords
+ * into the engine. Submitted records wait in a bounded queue, and submit blocks while the
+ * queue is full, so memory use is bounded by the queue capacity plus one stream per worker.
+ *
+ * Noise words must be loaded into the engine (loadNoiseWords) before documents are submitted.
+ *
+ */
+public class StreamIndexer {
+	
+	/**
+	 * A document waiting to be indexed.
+	 */
+	private static class Record {
+		String docName;
+		InputStream content;
+		Record(String docName, InputStream content) {
+			this.docName = docName;
+			this.content = content;
+		}
+	}
+	
+	/**
+	 * Marks the end of the input for one worker.
+	 */
+	private static final Record END = new Record(null, null);
+	
+	/**
+	 * Engine into which documents are indexed.
+	 */
+	private final SearchEngine engine;
+	
+	/**
+	 * Records that have been submitted but not yet taken by a worker.
+	 */
+	private final BlockingQueue<Record> queue;
+	
+	private final Thread[] workers;
+	
+	/**
+	 * First failure of any worker, rethrown by close: an IOException, or a RuntimeException.
+	 */
+	private volatile Exception failure;
+	
+	private boolean closed;
+	
+	/**
+	 * Starts an indexer with the given queue capacity and number of worker threads.
+	 *
+	 * @param engine Engine into which documents are indexed
+	 * @param capacity Maximum number of submitted documents waiting to be indexed
+	 * @param numWorkers Number of threads scanning documents
+	 */
+	public StreamIndexer(SearchEngine engine, int capacity, int numWorkers) {
+		if (capacity < 1 || numWorkers < 1) {
+			throw new IllegalArgumentException("capacity and numWorkers must be at least 1");
+		}
+		this.engine = engine;
+		queue = new ArrayBlockingQueue<Record>(capacity);
+		workers = new Thread[numWorkers];
+		for (int i = 0; i < numWorkers; i++) {
+			workers[i] = new Thread(new Runnable() {
+				public void run() {
+					work();
+				}
+			}, "stream-indexer-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+	
+	/**
+	 * Submits a document for indexing, waiting while the queue is full. The stream is
+	 * closed once the document has been indexed.
+	 *
+	 * @param docName Name under which the document is indexed
+	 * @param content Stream with the document's contents
+	 * @throws InterruptedException If interrupted while waiting for space in the queue
+	 * @throws IllegalStateException If the indexer has been closed
+	 */
+	public void submit(String docName, InputStream content)
+	throws InterruptedException {
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("indexer is closed");
+			}
+		}
+		queue.put(new Record(docName, content));
+	}
+	
+	/**
+	 * Stops accepting documents, and waits until all submitted documents are indexed and
+	 * searchable. Producers must have returned from submit before close is called.
+	 *
+	 * @throws IOException If reading any document failed; the other documents are still indexed
+	 * @throws RuntimeException If scanning or merging any document failed unexpectedly; the
+	 * other documents are still indexed
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public void close()
+	throws IOException, InterruptedException {
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+		}
+		for (int i = 0; i < workers.length; i++) {
+			queue.put(END);
+		}
+		for (Thread worker: workers) {
+			worker.join();
+		}
+		engine.flush();
+		Exception f = failure;
+		if (f instanceof IOException) {
+			throw (IOException) f;
+		}
+		if (f != null) {
+			throw (RuntimeException) f;
+		}
+	}
+	
+	private void work() {
+		while (true) {
+			Record rec;
+			try {
+				rec = queue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (rec == END)
+				return;
+			try {
+				HashMap<String,Occurrence> kws = engine.loadKeywordsFromStream(rec.docName, rec.content);
+				engine.mergeKeywords(kws);
+			} catch (IOException e) {
+				fail(new IOException("failed to index " + rec.docName, e));
+			} catch (UncheckedIOException e) {
+				fail(new IOException("failed to index " + rec.docName, e.getCause()));
+			} catch (RuntimeException e) {
+				// the worker goes on, so that the queue keeps draining
+				fail(new IllegalStateException("failed to index " + rec.docName, e));
+			} finally {
+				try {
+					rec.content.close();
+				} catch (IOException | RuntimeException e) {
+					// document is already indexed
+				}
+			}
+		}
+	}
+	
+	private synchronized void fail(Exception e) {
+		if (failure == null)
+			failure = e;
+	}
+}